@@ -0,0 +1,159 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The {@code cdk.context.json} file of the project. The values resolved by the plugin are stored along with the time
+ * they have been resolved at, so they can expire. The timestamps are stored under a reserved key which is never passed
+ * to the application.
+ */
+class ContextFile {
+
+    static final String FILE_NAME = "cdk.context.json";
+    static final String TIMESTAMPS_KEY = "aws-cdk-maven-plugin:timestamps";
+
+    private final Path file;
+    private final Map<String, Object> values;
+    private final Map<String, String> timestamps;
+
+    private ContextFile(Path file, Map<String, Object> values, Map<String, String> timestamps) {
+        this.file = file;
+        this.values = values;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Reads the context file of the project, an empty context is returned if the file doesn't exist.
+     *
+     * @param projectDirectory the base directory of the project
+     */
+    static ContextFile read(Path projectDirectory) {
+        Path file = projectDirectory.resolve(FILE_NAME);
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, String> timestamps = new TreeMap<>();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Map<String, Object> content = new Gson().fromJson(reader, new TypeToken<Map<String, Object>>() {
+                }.getType());
+                if (content != null) {
+                    values.putAll(content);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new CdkException("Unable to read the runtime context from the " + file, e);
+            }
+            Object storedTimestamps = values.remove(TIMESTAMPS_KEY);
+            if (storedTimestamps instanceof Map) {
+                ((Map<?, ?>) storedTimestamps).forEach((key, timestamp) -> timestamps.put(String.valueOf(key), String.valueOf(timestamp)));
+            }
+        }
+        return new ContextFile(file, values, timestamps);
+    }
+
+    /**
+     * Returns the context values. The values resolved by the plugin longer ago than the time to live are left out, the
+     * values without a timestamp never expire.
+     *
+     * @param timeToLive the time to live of the resolved values or {@code null} if they never expire
+     * @param now the current time
+     */
+    Map<String, Object> getValues(@Nullable Duration timeToLive, Instant now) {
+        Map<String, Object> result = new LinkedHashMap<>(values);
+        if (timeToLive != null) {
+            timestamps.forEach((key, timestamp) -> {
+                Instant resolvedAt = parseTimestamp(timestamp);
+                if (resolvedAt == null || resolvedAt.plus(timeToLive).isBefore(now)) {
+                    result.remove(key);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Returns the keys of the values which are older than the time to live.
+     */
+    Set<String> getExpiredKeys(Duration timeToLive, Instant now) {
+        Map<String, Object> current = getValues(timeToLive, now);
+        Set<String> expiredKeys = new TreeSet<>(values.keySet());
+        expiredKeys.removeAll(current.keySet());
+        return expiredKeys;
+    }
+
+    /**
+     * Stores a value resolved by the plugin.
+     */
+    void put(String key, Object value, Instant resolvedAt) {
+        values.put(key, value);
+        timestamps.put(key, resolvedAt.toString());
+    }
+
+    /**
+     * Removes the given keys, returning the ones that have been present.
+     */
+    Set<String> remove(Collection<String> keys) {
+        Set<String> removedKeys = new TreeSet<>();
+        for (String key : keys) {
+            if (values.containsKey(key)) {
+                removedKeys.add(key);
+            }
+            values.remove(key);
+            timestamps.remove(key);
+        }
+        return removedKeys;
+    }
+
+    Set<String> getKeys() {
+        return values.keySet();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the context back to the file.
+     */
+    void write() {
+        Map<String, Object> content = new LinkedHashMap<>(values);
+        timestamps.keySet().retainAll(values.keySet());
+        if (!timestamps.isEmpty()) {
+            content.put(TIMESTAMPS_KEY, timestamps);
+        }
+        String json = new GsonBuilder()
+                .setPrettyPrinting()
+                .create()
+                .toJson(content);
+        try {
+            Files.write(file, (json + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new CdkException("Unable to write the runtime context to the " + file, e);
+        }
+    }
+
+    @Nullable
+    private static Instant parseTimestamp(String timestamp) {
+        try {
+            return Instant.parse(timestamp);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
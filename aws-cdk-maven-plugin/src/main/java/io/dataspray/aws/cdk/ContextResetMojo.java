@@ -0,0 +1,49 @@
+package io.dataspray.aws.cdk;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Removes the cached context values from the {@code cdk.context.json} file of the project, so that they are looked up
+ * again during the next synthesis.
+ */
+@Mojo(name = "context-reset")
+public class ContextResetMojo extends AbstractCdkMojo {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextResetMojo.class);
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    /**
+     * Context keys to be removed. By default, all the context values will be removed.
+     */
+    @Parameter(property = "aws.cdk.context.keys")
+    private Set<String> keys;
+
+    @Override
+    public void execute(Path cloudAssemblyDirectory, Optional<String> profileOpt, Optional<String> endpointUrlOpt) {
+        ContextFile contextFile = ContextFile.read(project.getBasedir().toPath());
+        if (!Files.exists(contextFile.getFile())) {
+            logger.info("The context file {} doesn't exist, nothing to reset", contextFile.getFile());
+            return;
+        }
+
+        Set<String> removedKeys = contextFile.remove(keys == null || keys.isEmpty() ? new ArrayList<>(contextFile.getKeys()) : keys);
+        contextFile.write();
+        if (removedKeys.isEmpty()) {
+            logger.info("No context values have been removed from {}", contextFile.getFile());
+        } else {
+            logger.info("Removed the context values for the keys {} from {}", removedKeys, contextFile.getFile());
+        }
+    }
+}
@@ -46,8 +46,99 @@ public class DeployMojo extends AbstractCdkMojo {
     @Parameter(property = "aws.cdk.notificationArns")
     private Set<String> notificationArns;
 
+    /**
+     * The maximum number of stacks deployed concurrently within a single environment. A stack is deployed as soon as
+     * all the stacks it depends on are deployed.
+     */
+    @Parameter(property = "aws.cdk.concurrency", defaultValue = "1")
+    private int concurrency;
+
+    /**
+     * The maximum number of file assets uploaded concurrently.
+     */
+    @Parameter(property = "aws.cdk.assets.file.concurrency", defaultValue = "4")
+    private int fileAssetConcurrency;
+
+    /**
+     * The maximum number of Docker image assets built and pushed concurrently.
+     */
+    @Parameter(property = "aws.cdk.assets.image.concurrency", defaultValue = "1")
+    private int imageAssetConcurrency;
+
+    /**
+     * Whether directory assets should be zipped directly into the upload stream instead of temporary files.
+     */
+    @Parameter(property = "aws.cdk.assets.stream", defaultValue = "false")
+    private boolean streamDirectoryAssets;
+
+    /**
+     * The size of the parts the file assets are uploaded in (5 MB at least).
+     */
+    @Parameter(property = "aws.cdk.s3.part.size", defaultValue = "5242880")
+    private long s3PartSize;
+
+    /**
+     * Whether a file asset published to several regions should be uploaded once and copied to the other buckets by S3.
+     */
+    @Parameter(property = "aws.cdk.assets.file.replicate", defaultValue = "false")
+    private boolean replicateFileAssets;
+
+    /**
+     * The maximum number of concurrent S3 requests per environment.
+     */
+    @Parameter(property = "aws.cdk.s3.max.concurrency")
+    private Integer s3MaxConcurrency;
+
+    /**
+     * The target throughput of the file asset uploads per environment in gigabits per second.
+     */
+    @Parameter(property = "aws.cdk.s3.target.throughput")
+    private Double s3TargetThroughputInGbps;
+
+    /**
+     * Whether the stacks whose template, parameters and tags haven't changed since the last deployment should be
+     * skipped. The fingerprint of the deployment is added to the template as the {@code AwsCdkMavenPluginFingerprint}
+     * output, which counts towards the limit of 200 outputs per template.
+     */
+    @Parameter(property = "aws.cdk.skip.unchanged", defaultValue = "false")
+    private boolean skipUnchangedStacks;
+
+    /**
+     * Whether the code changes of Lambda functions should be deployed by updating the functions directly, bypassing
+     * CloudFormation. Intended for development environments only, the hotswapped stacks drift from their templates.
+     */
+    @Parameter(property = "aws.cdk.hotswap", defaultValue = "false")
+    private boolean hotswap;
+
+    /**
+     * Whether the stacks should be deployed using change sets. The change sets of all the stacks are created
+     * concurrently before any of them is executed.
+     */
+    @Parameter(property = "aws.cdk.change.sets", defaultValue = "false")
+    private boolean changeSets;
+
+    /**
+     * The maximum number of change sets created concurrently.
+     */
+    @Parameter(property = "aws.cdk.change.sets.concurrency", defaultValue = "8")
+    private int changeSetConcurrency;
+
     @Override
     public void execute(Path cloudAssemblyDirectory, Optional<String> profileOpt, Optional<String> endpointUrlOpt) {
-        AwsCdk.deploy().execute(cloudAssemblyDirectory, toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt);
+        DeployConfiguration configuration = DeployConfiguration.builder()
+                .concurrency(concurrency)
+                .fileAssetConcurrency(fileAssetConcurrency)
+                .imageAssetConcurrency(imageAssetConcurrency)
+                .streamDirectoryAssets(streamDirectoryAssets)
+                .s3PartSize(s3PartSize)
+                .s3MaxConcurrency(s3MaxConcurrency)
+                .s3TargetThroughputInGbps(s3TargetThroughputInGbps)
+                .replicateFileAssets(replicateFileAssets)
+                .skipUnchangedStacks(skipUnchangedStacks)
+                .hotswap(hotswap)
+                .changeSets(changeSets)
+                .changeSetConcurrency(changeSetConcurrency)
+                .build();
+        AwsCdk.deploy().execute(cloudAssemblyDirectory, toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt, configuration);
     }
 }
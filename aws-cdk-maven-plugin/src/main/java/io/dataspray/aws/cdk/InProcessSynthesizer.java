@@ -0,0 +1,132 @@
+package io.dataspray.aws.cdk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Synthesizes a cloud assembly in the Maven JVM, loading the application classpath into an isolated class loader
+ * instead of starting a new JVM.
+ *
+ * The CDK application reads its output directory and context from the environment of the Node.js process started by
+ * jsii, which inherits the environment of the JVM. The variables are therefore set in the environment of the JVM for the
+ * duration of the synthesis. Modifying it requires {@code --add-opens java.base/java.util=ALL-UNNAMED}, e.g. in
+ * {@code .mvn/jvm.config}, otherwise the in-process synthesis is not supported.
+ */
+class InProcessSynthesizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessSynthesizer.class);
+    private static final String SYNTHESIZER_CLASS_NAME = "io.dataspray.aws.cdk.runtime.Synthesizer";
+    private static final String JSII_ENGINE_CLASS_NAME = "software.amazon.jsii.JsiiEngine";
+
+    /**
+     * Returns whether the environment of the JVM can be modified, which is required for the in-process synthesis.
+     */
+    static boolean isSupported() {
+        try {
+            getModifiableEnvironment();
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("The environment of the JVM can't be modified", e);
+            return false;
+        }
+    }
+
+    /**
+     * Runs the application in an isolated class loader with the given environment.
+     *
+     * @param classpath the classpath of the application, including the runtime module
+     * @param app the name of the application class
+     * @param arguments the arguments to be passed to the application
+     * @param environment the environment of the application
+     */
+    static synchronized void synthesize(List<String> classpath, String app, List<String> arguments, Map<String, String> environment) {
+        Map<String, String> modifiableEnvironment;
+        try {
+            modifiableEnvironment = getModifiableEnvironment();
+        } catch (ReflectiveOperationException e) {
+            throw new CdkException("The in-process synthesis is not supported by the JVM", e);
+        }
+
+        Map<String, String> previousValues = new HashMap<>();
+        environment.forEach((name, value) -> {
+            if (!Objects.equals(System.getenv(name), value)) {
+                previousValues.put(name, System.getenv(name));
+                modifiableEnvironment.put(name, value);
+            }
+        });
+
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(toUrls(classpath), ClassLoader.getPlatformClassLoader())) {
+            thread.setContextClassLoader(classLoader);
+            try {
+                Method run = classLoader.loadClass(SYNTHESIZER_CLASS_NAME).getMethod("run", String.class, String[].class);
+                run.invoke(null, app, arguments.toArray(new String[0]));
+            } catch (ReflectiveOperationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new CdkException("The synthesis has failed: " + cause.getMessage(), cause);
+            } finally {
+                terminateJsiiRuntime(classLoader);
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to close the application class loader", e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+            previousValues.forEach((name, value) -> {
+                if (value != null) {
+                    modifiableEnvironment.put(name, value);
+                } else {
+                    modifiableEnvironment.remove(name);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the Node.js process started for the application, it would otherwise live until the Maven JVM exits.
+     */
+    private static void terminateJsiiRuntime(ClassLoader classLoader) {
+        try {
+            Method reset = classLoader.loadClass(JSII_ENGINE_CLASS_NAME).getDeclaredMethod("reset");
+            reset.setAccessible(true);
+            reset.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Unable to terminate the jsii runtime", e);
+        }
+    }
+
+    /**
+     * Returns the modifiable map behind {@link System#getenv()}. The processes started by the JVM inherit its content.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> getModifiableEnvironment() throws ReflectiveOperationException {
+        Map<String, String> environment = System.getenv();
+        Field field = environment.getClass().getDeclaredField("m");
+        field.setAccessible(true);
+        return (Map<String, String>) field.get(environment);
+    }
+
+    private static URL[] toUrls(List<String> classpath) {
+        URL[] urls = new URL[classpath.size()];
+        for (int i = 0; i < classpath.size(); i++) {
+            try {
+                urls[i] = new File(classpath.get(i)).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new CdkException("Invalid classpath entry " + classpath.get(i), e);
+            }
+        }
+        return urls;
+    }
+}
@@ -1,10 +1,11 @@
 package io.dataspray.aws.cdk;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Streams;
-import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.dataspray.aws.cdk.context.*;
@@ -13,6 +14,7 @@ import io.dataspray.aws.cdk.process.DefaultProcessRunner;
 import io.dataspray.aws.cdk.process.ProcessContext;
 import io.dataspray.aws.cdk.process.ProcessExecutionException;
 import io.dataspray.aws.cdk.process.ProcessRunner;
+import io.dataspray.aws.cdk.runtime.SynthesisWorker;
 import io.dataspray.aws.cdk.runtime.Synthesizer;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -29,9 +31,6 @@ import software.amazon.awscdk.cloudassembly.schema.AssemblyManifest;
 import software.amazon.awscdk.cloudassembly.schema.ContextProvider;
 import software.amazon.awscdk.cloudassembly.schema.Manifest;
 import software.amazon.awscdk.cloudassembly.schema.MissingContext;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.route53.Route53Client;
 import software.amazon.awssdk.services.ssm.SsmClient;
@@ -39,14 +38,20 @@ import software.amazon.jsii.JsiiObject;
 import software.amazon.jsii.UnsafeCast;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -63,7 +68,6 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
 
     private static final Logger logger = LoggerFactory.getLogger(DeployMojo.class);
 
-    private static final String CDK_CONTEXT_FILE_NAME = "cdk.context.json";
     private static final NodeVersion MINIMUM_REQUIRED_NODE_VERSION = NodeVersion.of(18, 0, 0);
     private static final NodeVersion INSTALLED_NODE_VERSION = NodeVersion.of(18, 16, 1);
     private static final String OUTPUT_DIRECTORY_VARIABLE_NAME = "CDK_OUTDIR";
@@ -71,6 +75,7 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
     private static final String DEFAULT_REGION_VARIABLE_NAME = "CDK_DEFAULT_REGION";
     private static final String CONTEXT_VARIABLE_NAME = "CDK_CONTEXT_JSON";
     private static final String PATH_VARIABLE_NAME = "PATH";
+    private static final int CONTEXT_LOOKUP_CONCURRENCY = 8;
 
     @Component
     private ToolchainManager toolchainManager;
@@ -108,29 +113,78 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
     @Parameter(property = "aws.cdk.arguments")
     private List<String> arguments;
 
+    /**
+     * Whether the synthesis should be skipped if its inputs haven't changed since the cloud assembly was synthesized.
+     * The inputs are the classpath of the application, the context, the application class, its arguments and the
+     * {@code CDK_*} and AWS region and profile environment variables. The synthesis is also performed if any file of
+     * the cloud assembly has been modified or deleted. Files read by the application from outside of its classpath are
+     * not taken into account.
+     */
+    @Parameter(property = "aws.cdk.synth.incremental", defaultValue = "false")
+    private boolean incremental;
+
+    /**
+     * Whether the application should be run inside the Maven JVM in an isolated class loader instead of a new JVM. The
+     * JVM must allow the plugin to modify its environment ({@code --add-opens java.base/java.util=ALL-UNNAMED} in
+     * {@code .mvn/jvm.config}), otherwise a new JVM is started as usual. The JDK toolchain is ignored in this mode. The
+     * mode is not used in parallel builds, as the processes started by the other modules would inherit the modified
+     * environment.
+     */
+    @Parameter(property = "aws.cdk.synth.in.process", defaultValue = "false")
+    private boolean inProcess;
+
+    /**
+     * Whether the application should be run in a single long-lived JVM reused by all the synthesis iterations needed
+     * to resolve the missing context, keeping the JVM and the jsii runtime warm. Ignored if {@code inProcess} is used.
+     */
+    @Parameter(property = "aws.cdk.synth.worker", defaultValue = "false")
+    private boolean worker;
+
+    /**
+     * Whether the context values resolved during the synthesis should be merged into the {@code cdk.context.json} file
+     * of the project along with the time they have been resolved at, so that the subsequent builds don't have to look
+     * them up again. The file can be cleared with the {@code context-reset} goal.
+     */
+    @Parameter(property = "aws.cdk.context.persist", defaultValue = "false")
+    private boolean persistContext;
+
+    /**
+     * The time to live of the context values persisted by the plugin as an ISO-8601 duration (for example,
+     * {@code P7D}). The expired values are looked up again. The persisted values never expire by default.
+     */
+    @Parameter(property = "aws.cdk.context.ttl")
+    private String contextTtl;
+
     private ProcessRunner processRunner;
+    private SynthesisWorkerProcess workerProcess;
+    private Path workerContextFile;
     private Map<ContextProvider, ContextProviderMapper<?>> contextProviders;
 
     @Override
     public void execute(Path cloudAssemblyDirectory, Optional<String> profileOpt, Optional<String> endpointUrlOpt) {
         EnvironmentResolver environmentResolver = EnvironmentResolver.create(profileOpt.orElse(null), endpointUrlOpt);
         this.processRunner = new DefaultProcessRunner(project.getBasedir());
-        this.contextProviders = initContextProviders(environmentResolver);
-        synthesize(app, arguments != null ? arguments : Collections.emptyList(), cloudAssemblyDirectory, environmentResolver);
+        if (inProcess && !InProcessSynthesizer.isSupported()) {
+            logger.warn("The application can't be run in the Maven JVM as its environment can't be modified, " +
+                    "please add '--add-opens java.base/java.util=ALL-UNNAMED' to .mvn/jvm.config. Starting a new JVM instead");
+            this.inProcess = false;
+        }
+        if (inProcess && session.isParallel()) {
+            logger.warn("The application can't be run in the Maven JVM in a parallel build, as the processes started " +
+                    "by the other modules meanwhile would inherit its environment. Starting a new JVM instead");
+            this.inProcess = false;
+        }
+        try (AwsClients awsClients = new AwsClients()) {
+            this.contextProviders = initContextProviders(environmentResolver, awsClients);
+            synthesize(app, arguments != null ? arguments : Collections.emptyList(), cloudAssemblyDirectory, environmentResolver);
+        }
     }
 
-    private Map<ContextProvider, ContextProviderMapper<?>> initContextProviders(EnvironmentResolver environmentResolver) {
+    private Map<ContextProvider, ContextProviderMapper<?>> initContextProviders(EnvironmentResolver environmentResolver, AwsClients awsClients) {
         AwsClientProvider awsClientProvider = new AwsClientProviderBuilder()
-                .withClientFactory(Ec2Client.class, env -> buildClient(Ec2Client.builder(), environmentResolver.resolve(env)))
-                .withClientFactory(SsmClient.class, env -> buildClient(SsmClient.builder(), environmentResolver.resolve(env)))
-                .withClientFactory(Route53Client.class, env -> {
-                    ResolvedEnvironment resolvedEnvironment = environmentResolver.resolve(env);
-                    return Route53Client.builder()
-                            .region(Region.AWS_GLOBAL)
-                            .credentialsProvider(StaticCredentialsProvider.create(resolvedEnvironment.getCredentials()))
-                            .endpointOverride(resolvedEnvironment.getEndpointUriOpt().orElse(null))
-                            .build();
-                })
+                .withClientFactory(Ec2Client.class, env -> awsClients.ec2(environmentResolver.resolve(env)))
+                .withClientFactory(SsmClient.class, env -> awsClients.ssm(environmentResolver.resolve(env)))
+                .withClientFactory(Route53Client.class, env -> awsClients.route53(environmentResolver.resolve(env)))
                 .build();
 
         Map<ContextProvider, ContextProviderMapper<?>> contextProviders = new HashMap<>();
@@ -142,13 +196,6 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
         return contextProviders;
     }
 
-    private <B extends AwsClientBuilder<B, C>, C> C buildClient(B builder, ResolvedEnvironment environment) {
-        return builder.region(environment.getRegion())
-                .credentialsProvider(StaticCredentialsProvider.create(environment.getCredentials()))
-                .endpointOverride(environment.getEndpointUriOpt().orElse(null))
-                .build();
-    }
-
     protected AssemblyManifest synthesize(String app, List<String> arguments, Path outputDirectory, EnvironmentResolver environmentResolver) {
         Map<String, String> environment;
         if (SystemUtils.IS_OS_WINDOWS) {
@@ -159,6 +206,33 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
             environment = new HashMap<>(System.getenv());
         }
 
+        environment.computeIfAbsent(OUTPUT_DIRECTORY_VARIABLE_NAME, v -> outputDirectory.toString());
+        environment.computeIfAbsent(DEFAULT_REGION_VARIABLE_NAME, v -> environmentResolver.getDefaultRegion().id());
+        if (environmentResolver.getDefaultAccount() != null) {
+            environment.computeIfAbsent(DEFAULT_ACCOUNT_VARIABLE_NAME, v -> environmentResolver.getDefaultAccount());
+        }
+
+        Instant now = Instant.now();
+        Duration contextTimeToLive = parseContextTtl();
+        ContextFile contextFile = ContextFile.read(project.getBasedir().toPath());
+        Map<String, Object> context = contextFile.getValues(contextTimeToLive, now);
+        if (contextTimeToLive != null) {
+            Set<String> expiredKeys = contextFile.getExpiredKeys(contextTimeToLive, now);
+            if (!expiredKeys.isEmpty()) {
+                logger.info("The context values for the keys {} have expired and will be looked up again", expiredKeys);
+            }
+        }
+
+        String fingerprint = null;
+        if (incremental) {
+            fingerprint = SynthesisFingerprint.inputs(buildAppExecutionCommand(app, arguments), getClasspath(), environment, context);
+            if (SynthesisFingerprint.isUpToDate(outputDirectory, fingerprint)) {
+                logger.info("The cloud assembly in {} is up to date, skipping the synthesis", outputDirectory);
+                return Manifest.loadAssemblyManifest(outputDirectory.resolve("manifest.json").toString());
+            }
+        }
+        SynthesisFingerprint.delete(outputDirectory);
+
         NodeVersion nodeVersion = getInstalledNodeVersion().orElse(null);
         if (nodeVersion == null || nodeVersion.compareTo(MINIMUM_REQUIRED_NODE_VERSION) < 0) {
             if (nodeVersion == null) {
@@ -176,50 +250,58 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
             logger.info("Using Node.js from path with version {}", nodeVersion);
         }
 
-        environment.computeIfAbsent(OUTPUT_DIRECTORY_VARIABLE_NAME, v -> outputDirectory.toString());
-        environment.computeIfAbsent(DEFAULT_REGION_VARIABLE_NAME, v -> environmentResolver.getDefaultRegion().id());
-        if (environmentResolver.getDefaultAccount() != null) {
-            environment.computeIfAbsent(DEFAULT_ACCOUNT_VARIABLE_NAME, v -> environmentResolver.getDefaultAccount());
-        }
-
-        Map<String, Object> context = readContext();
-
         logger.info("Synthesizing the cloud assembly for the '{}' application", app);
-        AssemblyManifest cloudManifest = synthesize(app, arguments, outputDirectory, environment, context);
-
-        boolean contextIsEmpty = true;
-        while (cloudManifest.getMissing() != null && !cloudManifest.getMissing().isEmpty()) {
-            context = Maps.newHashMap(context);
-            for (MissingContext missingContext : cloudManifest.getMissing()) {
-                ContextProvider provider = missingContext.getProvider();
-                String key = missingContext.getKey();
-
-                ContextProviderMapper contextProviderMapper = contextProviders.get(provider);
-                if (contextProviderMapper == null) {
-                    throw new CdkException("Unable to find a context provider for '" + provider +
-                            "'. Please consider updating the version of the plugin");
-                }
-
-                Object contextProps = UnsafeCast.unsafeCast((JsiiObject) missingContext.getProps(), contextProviderMapper.getContextType());
-                Object contextValue;
-                try {
-                    contextValue = contextProviderMapper.getContextValue(contextProps);
-                } catch (Exception e) {
-                    throw new CdkException("An error occurred while resolving context value for the " +
-                            "key '" + key + "' using '" + provider + "' provider: " + e.getMessage());
+        AssemblyManifest cloudManifest;
+        Map<String, Object> resolvedContext = new LinkedHashMap<>();
+        ExecutorService lookupExecutor = Executors.newFixedThreadPool(CONTEXT_LOOKUP_CONCURRENCY, new ThreadFactoryBuilder()
+                .setNameFormat("cdk-context-lookup-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            cloudManifest = synthesize(app, arguments, outputDirectory, environment, context);
+            while (cloudManifest.getMissing() != null && !cloudManifest.getMissing().isEmpty()) {
+                context = Maps.newHashMap(context);
+                // The key of the missing context is derived from the provider and its properties, so the identical
+                // lookups are only made once
+                Map<String, CompletableFuture<Object>> lookups = new LinkedHashMap<>();
+                for (MissingContext missingContext : cloudManifest.getMissing()) {
+                    ContextProvider provider = missingContext.getProvider();
+                    String key = missingContext.getKey();
+                    if (lookups.containsKey(key)) {
+                        continue;
+                    }
+
+                    ContextProviderMapper contextProviderMapper = contextProviders.get(provider);
+                    if (contextProviderMapper == null) {
+                        throw new CdkException("Unable to find a context provider for '" + provider +
+                                "'. Please consider updating the version of the plugin");
+                    }
+
+                    // The properties are read from the jsii runtime while being cast, the lookups don't access it
+                    Object contextProps = UnsafeCast.unsafeCast((JsiiObject) missingContext.getProps(), contextProviderMapper.getContextType());
+                    lookups.put(key, CompletableFuture.supplyAsync(
+                            () -> lookUpContextValue(contextProviderMapper, contextProps, provider, key), lookupExecutor));
                 }
-                if (contextValue == null) {
-                    throw new CdkException("Unable to resolve context value for the key '" + key +
-                            "' using '" + provider + "' provider");
+                for (Map.Entry<String, CompletableFuture<Object>> lookup : lookups.entrySet()) {
+                    Object contextValue;
+                    try {
+                        contextValue = lookup.getValue().join();
+                    } catch (CompletionException e) {
+                        Throwables.throwIfUnchecked(e.getCause());
+                        throw e;
+                    }
+                    context.put(lookup.getKey(), contextValue);
+                    resolvedContext.put(lookup.getKey(), contextValue);
                 }
-                contextIsEmpty = false;
-                context.put(key, contextValue);
+                cloudManifest = synthesize(app, arguments, outputDirectory, environment, context);
             }
-            cloudManifest = synthesize(app, arguments, outputDirectory, environment, context);
+        } finally {
+            lookupExecutor.shutdownNow();
+            closeWorker();
         }
 
-        if (!contextIsEmpty) {
-            Path effectiveContextPath = outputDirectory.resolve("cdk.context.json");
+        if (!resolvedContext.isEmpty()) {
+            Path effectiveContextPath = outputDirectory.resolve(ContextFile.FILE_NAME);
             String contextStrPretty = new GsonBuilder()
                     .setPrettyPrinting()
                     .create()
@@ -231,26 +313,51 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
             }
         }
 
+        if (persistContext && !resolvedContext.isEmpty()) {
+            // The file is read again so that the values resolved by the concurrent builds are not lost
+            ContextFile projectContextFile = ContextFile.read(project.getBasedir().toPath());
+            resolvedContext.forEach((key, value) -> projectContextFile.put(key, value, now));
+            projectContextFile.write();
+            logger.info("Saved {} resolved context value(s) to {}", resolvedContext.size(), projectContextFile.getFile());
+        }
+
+        if (fingerprint != null) {
+            SynthesisFingerprint.write(outputDirectory, fingerprint);
+        }
+
         logger.info("The cloud assembly has been successfully synthesized to {}", outputDirectory);
         return cloudManifest;
     }
 
-    private Map<String, Object> readContext() {
-        File contextFile = new File(project.getBasedir(), CDK_CONTEXT_FILE_NAME);
-
-        Map<String, Object> context;
-        if (contextFile.exists()) {
-            try (Reader reader = new FileReader(contextFile)) {
-                context = new Gson().fromJson(reader, new TypeToken<Map<String, Object>>() {
-                }.getType());
-            } catch (IOException e) {
-                throw new CdkException("Unable to read the runtime context from the " + contextFile);
-            }
-        } else {
-            context = Maps.newHashMap();
+    @SuppressWarnings("unchecked")
+    private Object lookUpContextValue(ContextProviderMapper contextProviderMapper, Object contextProps, ContextProvider provider, String key) {
+        long startTime = System.nanoTime();
+        Object contextValue;
+        try {
+            contextValue = contextProviderMapper.getContextValue(contextProps);
+        } catch (Exception e) {
+            throw new CdkException("An error occurred while resolving context value for the " +
+                    "key '" + key + "' using '" + provider + "' provider: " + e.getMessage());
         }
+        if (contextValue == null) {
+            throw new CdkException("Unable to resolve context value for the key '" + key +
+                    "' using '" + provider + "' provider");
+        }
+        logger.info("Resolved the context value for the key '{}' using '{}' provider in {} ms", key, provider,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return contextValue;
+    }
 
-        return context;
+    private Duration parseContextTtl() {
+        if (contextTtl == null || contextTtl.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Duration.parse(contextTtl.trim());
+        } catch (DateTimeParseException e) {
+            throw new CdkException("The context time to live '" + contextTtl + "' is not a valid ISO-8601 duration " +
+                    "(for example, P7D or PT12H)", e);
+        }
     }
 
     private AssemblyManifest synthesize(String app, List<String> arguments, Path outputDirectory, Map<String, String> environment, Map<String, Object> context) {
@@ -264,37 +371,93 @@ public class SynthMojo extends AbstractCdkMojo implements ContextEnabled {
                     .build();
         }
 
-        int exitCode;
-        List<String> appExecutionCommand = buildAppExecutionCommand(app, arguments);
-        ProcessContext processContext = ProcessContext.builder()
-                .withEnvironment(appEnvironment)
-                .build();
-        try {
-            exitCode = processRunner.run(appExecutionCommand, processContext);
-        } catch (ProcessExecutionException e) {
-            throw new CdkException("The synthesis has failed", e);
+        long startTime = System.nanoTime();
+        if (inProcess) {
+            InProcessSynthesizer.synthesize(getClasspath(), app, arguments, appEnvironment);
+        } else if (worker) {
+            synthesizeInWorker(app, arguments, environment, context);
+        } else {
+            int exitCode;
+            List<String> appExecutionCommand = buildAppExecutionCommand(app, arguments);
+            ProcessContext processContext = ProcessContext.builder()
+                    .withEnvironment(appEnvironment)
+                    .build();
+            try {
+                exitCode = processRunner.run(appExecutionCommand, processContext);
+            } catch (ProcessExecutionException e) {
+                throw new CdkException("The synthesis has failed", e);
+            }
+            if (exitCode != 0) {
+                throw new CdkException("The synthesis has failed with the exit code " + exitCode);
+            }
         }
+        logger.info("The application has been run {} in {} ms", inProcess ? "in the Maven JVM" : worker ? "in the synthesis worker" : "in a new JVM",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
 
-        if (exitCode != 0 || !Files.exists(outputDirectory)) {
+        if (!Files.exists(outputDirectory)) {
             throw new CdkException("The synthesis has failed: the output directory doesn't exist");
         }
 
         return Manifest.loadAssemblyManifest(outputDirectory.resolve("manifest.json").toString());
     }
 
+    /**
+     * Runs the application in the synthesis worker, starting it on the first call. The environment of the worker is
+     * fixed once it's started, so the context is passed through a file read by the application on each run.
+     */
+    private void synthesizeInWorker(String app, List<String> arguments, Map<String, String> environment, Map<String, Object> context) {
+        try {
+            if (workerProcess == null) {
+                workerContextFile = Files.createTempFile("cdk-context", ".json");
+                Map<String, String> workerEnvironment = new HashMap<>(environment);
+                workerEnvironment.remove(CONTEXT_VARIABLE_NAME);
+                workerEnvironment.put(SynthesisWorker.CONTEXT_FILE_VARIABLE_NAME, workerContextFile.toString());
+                workerProcess = SynthesisWorkerProcess.start(buildAppExecutionCommand(SynthesisWorker.class, app, arguments),
+                        workerEnvironment, project.getBasedir());
+            }
+            Files.write(workerContextFile, new Gson().toJson(context).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new CdkException("Unable to write the context of the synthesis worker", e);
+        }
+        workerProcess.synthesize();
+    }
+
+    private void closeWorker() {
+        if (workerProcess != null) {
+            workerProcess.close();
+            workerProcess = null;
+        }
+        if (workerContextFile != null) {
+            try {
+                Files.deleteIfExists(workerContextFile);
+            } catch (IOException e) {
+                logger.debug("Unable to delete the context file {}", workerContextFile, e);
+            }
+            workerContextFile = null;
+        }
+    }
+
     private List<String> buildAppExecutionCommand(String app, List<String> arguments) {
+        return buildAppExecutionCommand(Synthesizer.class, app, arguments);
+    }
+
+    private List<String> buildAppExecutionCommand(Class<?> mainClass, String app, List<String> arguments) {
         String java = Optional.ofNullable(this.toolchainManager.getToolchainFromBuildContext("jdk", this.session))
                 .map(toolchain -> toolchain.findTool("java"))
                 .orElseGet(() -> System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
-        String classpath = Streams.concat(
+        String classpath = String.join(File.pathSeparator, getClasspath());
+
+        return Stream.concat(Stream.of(java, "-cp", classpath, mainClass.getName(), app), arguments.stream())
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getClasspath() {
+        return Streams.concat(
                 project.getArtifacts().stream().map(Artifact::getFile).map(File::toString),
                 Stream.of(project.getBuild().getOutputDirectory()),
                 project.getResources().stream().map(FileSet::getDirectory),
                 Stream.of(Synthesizer.class.getProtectionDomain().getCodeSource().getLocation().getFile())
-        ).collect(Collectors.joining(File.pathSeparator));
-
-        return Stream.concat(Stream.of(java, "-cp", classpath, Synthesizer.class.getName(), app), arguments.stream())
-                .collect(Collectors.toList());
+        ).collect(Collectors.toList());
     }
 
     private Optional<NodeVersion> getInstalledNodeVersion() {
@@ -0,0 +1,136 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * The fingerprint of a synthesis stored in the cloud assembly directory. It consists of the fingerprint of the
+ * synthesis inputs and the fingerprint of the synthesized cloud assembly, so that the synthesis is performed again if
+ * either the inputs or the cloud assembly have changed since. The files are fingerprinted by their paths, sizes and
+ * modification times, so an unchanged project isn't read in full on every build.
+ */
+class SynthesisFingerprint {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynthesisFingerprint.class);
+
+    static final String FILE_NAME = "synth.fingerprint";
+    private static final Set<String> FINGERPRINTED_VARIABLE_NAMES = ImmutableSet.of("AWS_REGION", "AWS_DEFAULT_REGION", "AWS_PROFILE");
+    private static final String FINGERPRINTED_VARIABLE_PREFIX = "CDK_";
+
+    private SynthesisFingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of the synthesis inputs: the command running the application, its classpath, the
+     * {@code CDK_*} and AWS region and profile environment variables and the context.
+     */
+    static String inputs(List<String> command, List<String> classpath, Map<String, String> environment, Map<String, Object> context) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        command.forEach(part -> hasher.putString(part, StandardCharsets.UTF_8).putByte((byte) 0));
+        for (String classpathEntry : classpath) {
+            putFiles(hasher, Paths.get(classpathEntry), null);
+        }
+        new TreeMap<>(environment).forEach((name, value) -> {
+            if (name.startsWith(FINGERPRINTED_VARIABLE_PREFIX) || FINGERPRINTED_VARIABLE_NAMES.contains(name)) {
+                hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0)
+                        .putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+            }
+        });
+        hasher.putString(new Gson().toJson(new TreeMap<>(context)), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Computes the fingerprint of the files of the cloud assembly, leaving out the synthesis fingerprint itself.
+     */
+    static String assembly(Path outputDirectory) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putFiles(hasher, outputDirectory, outputDirectory.resolve(FILE_NAME));
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Checks whether the cloud assembly in the directory has been synthesized from the same inputs and hasn't been
+     * modified since.
+     */
+    static boolean isUpToDate(Path outputDirectory, String inputsFingerprint) {
+        Path fingerprintFile = outputDirectory.resolve(FILE_NAME);
+        if (!Files.exists(fingerprintFile) || !Files.exists(outputDirectory.resolve("manifest.json"))) {
+            return false;
+        }
+        String storedFingerprint;
+        try {
+            storedFingerprint = new String(Files.readAllBytes(fingerprintFile), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.debug("Unable to read the synthesis fingerprint from {}", fingerprintFile, e);
+            return false;
+        }
+        return storedFingerprint.equals(inputsFingerprint + "\n" + assembly(outputDirectory));
+    }
+
+    /**
+     * Stores the fingerprint of the synthesis once the cloud assembly has been synthesized.
+     */
+    static void write(Path outputDirectory, String inputsFingerprint) {
+        Path fingerprintFile = outputDirectory.resolve(FILE_NAME);
+        String fingerprint = inputsFingerprint + "\n" + assembly(outputDirectory);
+        try {
+            Files.write(fingerprintFile, fingerprint.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Unable to write the synthesis fingerprint to {}", fingerprintFile, e);
+        }
+    }
+
+    /**
+     * Removes the fingerprint, so the cloud assembly is never considered up to date while it's being synthesized.
+     */
+    static void delete(Path outputDirectory) {
+        Path fingerprintFile = outputDirectory.resolve(FILE_NAME);
+        try {
+            Files.deleteIfExists(fingerprintFile);
+        } catch (IOException e) {
+            throw new CdkException("Unable to delete the synthesis fingerprint " + fingerprintFile, e);
+        }
+    }
+
+    private static void putFiles(Hasher hasher, Path path, Path excludedFile) {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile)
+                        .filter(file -> !file.equals(excludedFile))
+                        .sorted()
+                        .forEach(file -> putFile(hasher, file));
+            } catch (IOException e) {
+                throw new CdkException("Unable to fingerprint the directory " + path, e);
+            }
+        } else if (Files.exists(path)) {
+            putFile(hasher, path);
+        }
+    }
+
+    private static void putFile(Hasher hasher, Path file) {
+        try {
+            hasher.putString(file.toString(), StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putLong(Files.size(file))
+                    .putLong(Files.getLastModifiedTime(file).toMillis());
+        } catch (IOException e) {
+            throw new CdkException("Unable to fingerprint the file " + file, e);
+        }
+    }
+}
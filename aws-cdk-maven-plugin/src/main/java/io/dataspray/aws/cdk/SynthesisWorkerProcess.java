@@ -0,0 +1,115 @@
+package io.dataspray.aws.cdk;
+
+import io.dataspray.aws.cdk.runtime.SynthesisWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived JVM running {@link SynthesisWorker}. The JVM and the jsii runtime are started once and reused by all the
+ * synthesis iterations, the context of each iteration is written to a file read by the application.
+ */
+class SynthesisWorkerProcess implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynthesisWorkerProcess.class);
+    private static final long TERMINATION_TIMEOUT_SECONDS = 10;
+
+    private final Process process;
+    private final Writer requests;
+    private final BufferedReader responses;
+
+    private SynthesisWorkerProcess(Process process) {
+        this.process = process;
+        this.requests = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        this.responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Starts the worker.
+     *
+     * @param command the command starting the worker JVM
+     * @param environment the environment of the worker, it must refer to the context file
+     * @param workingDirectory the working directory of the worker
+     */
+    static SynthesisWorkerProcess start(List<String> command, Map<String, String> environment, File workingDirectory) {
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .directory(workingDirectory);
+        processBuilder.environment().clear();
+        processBuilder.environment().putAll(environment);
+        logger.debug("Starting the synthesis worker {}", command);
+
+        Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            throw new CdkException("Unable to start the synthesis worker", e);
+        }
+        Thread outputPump = new Thread(() -> pump(process.getErrorStream(), System.out), "cdk-synthesis-worker-output");
+        outputPump.setDaemon(true);
+        outputPump.start();
+        return new SynthesisWorkerProcess(process);
+    }
+
+    /**
+     * Runs the application once using the current content of the context file.
+     */
+    void synthesize() {
+        String response;
+        try {
+            requests.write(SynthesisWorker.SYNTHESIZE_REQUEST + "\n");
+            requests.flush();
+            response = responses.readLine();
+        } catch (IOException e) {
+            throw new CdkException("Unable to communicate with the synthesis worker", e);
+        }
+
+        if (response == null) {
+            throw new CdkException("The synthesis has failed: the synthesis worker has exited unexpectedly");
+        }
+        if (!response.equals(SynthesisWorker.SUCCESS_RESPONSE)) {
+            throw new CdkException("The synthesis has failed");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            requests.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the input of the synthesis worker", e);
+        }
+        try {
+            if (!process.waitFor(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void pump(InputStream input, OutputStream output) {
+        byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                output.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to read the output of the synthesis worker", e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.gson.Gson;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+public class ContextFileTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T12:00:00Z");
+
+    private Path projectDirectory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        projectDirectory = Files.createTempDirectory("context-file");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        MoreFiles.deleteRecursively(projectDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testMissingFile() {
+        ContextFile contextFile = ContextFile.read(projectDirectory);
+        Assert.assertTrue(contextFile.getValues(null, NOW).isEmpty());
+        Assert.assertFalse(Files.exists(contextFile.getFile()));
+    }
+
+    @Test
+    public void testExpiredValuesLeftOut() throws IOException {
+        write(ImmutableMap.of(
+                "manual", "value",
+                "fresh", "value",
+                "expired", "value",
+                ContextFile.TIMESTAMPS_KEY, ImmutableMap.of(
+                        "fresh", NOW.minus(Duration.ofHours(1)).toString(),
+                        "expired", NOW.minus(Duration.ofDays(2)).toString())));
+        ContextFile contextFile = ContextFile.read(projectDirectory);
+
+        Assert.assertEquals(contextFile.getValues(Duration.ofDays(1), NOW).keySet(), ImmutableSet.of("manual", "fresh"));
+        Assert.assertEquals(contextFile.getExpiredKeys(Duration.ofDays(1), NOW), ImmutableSet.of("expired"));
+
+        // The values never expire without the time to live
+        Assert.assertEquals(contextFile.getValues(null, NOW).keySet(), ImmutableSet.of("manual", "fresh", "expired"));
+    }
+
+    @Test
+    public void testInvalidTimestampExpired() throws IOException {
+        write(ImmutableMap.of(
+                "key", "value",
+                ContextFile.TIMESTAMPS_KEY, ImmutableMap.of("key", "yesterday")));
+        ContextFile contextFile = ContextFile.read(projectDirectory);
+
+        Assert.assertTrue(contextFile.getValues(Duration.ofDays(1), NOW).isEmpty());
+        Assert.assertEquals(contextFile.getValues(null, NOW), ImmutableMap.of("key", "value"));
+    }
+
+    @Test
+    public void testTimestampsNotPassedToApplication() throws IOException {
+        write(ImmutableMap.of(
+                "key", "value",
+                ContextFile.TIMESTAMPS_KEY, ImmutableMap.of("key", NOW.toString())));
+        ContextFile contextFile = ContextFile.read(projectDirectory);
+
+        Assert.assertFalse(contextFile.getValues(null, NOW).containsKey(ContextFile.TIMESTAMPS_KEY));
+        Assert.assertFalse(contextFile.getValues(Duration.ofDays(1), NOW).containsKey(ContextFile.TIMESTAMPS_KEY));
+        Assert.assertFalse(contextFile.getKeys().contains(ContextFile.TIMESTAMPS_KEY));
+    }
+
+    @Test
+    public void testPutAndWrite() throws IOException {
+        write(ImmutableMap.of("manual", "value"));
+        ContextFile contextFile = ContextFile.read(projectDirectory);
+        contextFile.put("resolved", ImmutableList.of("us-east-1a", "us-east-1b"), NOW);
+        contextFile.write();
+
+        Map<String, Object> content = read();
+        Assert.assertEquals(content.get("manual"), "value");
+        Assert.assertEquals(content.get("resolved"), ImmutableList.of("us-east-1a", "us-east-1b"));
+        Assert.assertEquals(content.get(ContextFile.TIMESTAMPS_KEY), ImmutableMap.of("resolved", NOW.toString()));
+
+        ContextFile writtenFile = ContextFile.read(projectDirectory);
+        Assert.assertEquals(writtenFile.getValues(Duration.ofDays(1), NOW.plus(Duration.ofHours(1))).keySet(),
+                ImmutableSet.of("manual", "resolved"));
+        Assert.assertEquals(writtenFile.getValues(Duration.ofDays(1), NOW.plus(Duration.ofDays(2))).keySet(),
+                ImmutableSet.of("manual"));
+    }
+
+    @Test
+    public void testTimestampsPrunedAfterRemove() throws IOException {
+        write(ImmutableMap.of(
+                "first", "value",
+                "second", "value",
+                ContextFile.TIMESTAMPS_KEY, ImmutableMap.of(
+                        "first", NOW.toString(),
+                        "second", NOW.toString(),
+                        "orphan", NOW.toString())));
+        ContextFile contextFile = ContextFile.read(projectDirectory);
+
+        Assert.assertEquals(contextFile.remove(ImmutableList.of("first", "missing")), ImmutableSet.of("first"));
+        contextFile.write();
+        Map<String, Object> content = read();
+        Assert.assertEquals(content.keySet(), ImmutableSet.of("second", ContextFile.TIMESTAMPS_KEY));
+        Assert.assertEquals(content.get(ContextFile.TIMESTAMPS_KEY), ImmutableMap.of("second", NOW.toString()));
+
+        // The timestamps key is dropped along with the last timestamped value
+        contextFile.remove(ImmutableList.of("second"));
+        contextFile.write();
+        Assert.assertTrue(read().isEmpty());
+    }
+
+    private void write(Map<String, Object> content) throws IOException {
+        Files.write(projectDirectory.resolve(ContextFile.FILE_NAME), new Gson().toJson(content).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> read() throws IOException {
+        return new Gson().fromJson(new String(Files.readAllBytes(projectDirectory.resolve(ContextFile.FILE_NAME)), StandardCharsets.UTF_8), Map.class);
+    }
+}
@@ -0,0 +1,92 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+public class SynthesisFingerprintTest {
+
+    private static final List<String> COMMAND = ImmutableList.of("java", "-cp", "classes", "com.example.App");
+
+    private Path directory;
+    private Path classes;
+    private Path assembly;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("synthesis-fingerprint");
+        classes = Files.createDirectories(directory.resolve("classes"));
+        Files.write(classes.resolve("App.class"), new byte[]{1, 2, 3});
+        assembly = Files.createDirectories(directory.resolve("cdk.out"));
+        Files.write(assembly.resolve("manifest.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        Files.write(assembly.resolve("stack.template.json"), "{\"Resources\":{}}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testInputsFingerprint() throws IOException {
+        String fingerprint = inputs(ImmutableMap.of("CDK_DEFAULT_REGION", "us-east-1"), ImmutableMap.of("key", "value"));
+        Assert.assertEquals(inputs(ImmutableMap.of("CDK_DEFAULT_REGION", "us-east-1"), ImmutableMap.of("key", "value")), fingerprint);
+
+        // The variables unrelated to the synthesis are ignored
+        Assert.assertEquals(inputs(ImmutableMap.of("CDK_DEFAULT_REGION", "us-east-1", "HOME", "/home"),
+                ImmutableMap.of("key", "value")), fingerprint);
+        Assert.assertNotEquals(inputs(ImmutableMap.of("CDK_DEFAULT_REGION", "eu-west-1"), ImmutableMap.of("key", "value")), fingerprint);
+        Assert.assertNotEquals(inputs(ImmutableMap.of("CDK_DEFAULT_REGION", "us-east-1"), ImmutableMap.of("key", "other")), fingerprint);
+
+        Files.write(classes.resolve("App.class"), new byte[]{1, 2, 3, 4});
+        Assert.assertNotEquals(inputs(ImmutableMap.of("CDK_DEFAULT_REGION", "us-east-1"), ImmutableMap.of("key", "value")), fingerprint);
+    }
+
+    @Test
+    public void testUpToDate() {
+        String fingerprint = inputs(ImmutableMap.of(), ImmutableMap.of());
+        Assert.assertFalse(SynthesisFingerprint.isUpToDate(assembly, fingerprint));
+
+        SynthesisFingerprint.write(assembly, fingerprint);
+        Assert.assertTrue(SynthesisFingerprint.isUpToDate(assembly, fingerprint));
+        Assert.assertFalse(SynthesisFingerprint.isUpToDate(assembly, inputs(ImmutableMap.of(), ImmutableMap.of("key", "value"))));
+
+        SynthesisFingerprint.delete(assembly);
+        Assert.assertFalse(SynthesisFingerprint.isUpToDate(assembly, fingerprint));
+    }
+
+    @Test
+    public void testNotUpToDateIfAssemblyModified() throws IOException {
+        String fingerprint = inputs(ImmutableMap.of(), ImmutableMap.of());
+        Path template = assembly.resolve("stack.template.json");
+        SynthesisFingerprint.write(assembly, fingerprint);
+
+        Files.setLastModifiedTime(template, FileTime.fromMillis(Files.getLastModifiedTime(template).toMillis() + 1000));
+        Assert.assertFalse(SynthesisFingerprint.isUpToDate(assembly, fingerprint));
+
+        SynthesisFingerprint.write(assembly, fingerprint);
+        Files.delete(template);
+        Assert.assertFalse(SynthesisFingerprint.isUpToDate(assembly, fingerprint));
+
+        SynthesisFingerprint.write(assembly, fingerprint);
+        Files.delete(assembly.resolve("manifest.json"));
+        Assert.assertFalse(SynthesisFingerprint.isUpToDate(assembly, fingerprint));
+    }
+
+    private String inputs(Map<String, String> environment, Map<String, Object> context) {
+        return SynthesisFingerprint.inputs(COMMAND, ImmutableList.of(classes.toString()), environment, context);
+    }
+}
@@ -0,0 +1,54 @@
+package io.dataspray.aws.cdk.runtime;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Synthesizes a cloud assembly from the CDK app class on every request read from the standard input, so the JVM and
+ * the jsii runtime are reused by the subsequent synthesis iterations.
+ *
+ * Each {@value #SYNTHESIZE_REQUEST} line starts a synthesis and is answered by a {@value #SUCCESS_RESPONSE} or a
+ * {@value #FAILURE_RESPONSE} line on the standard output, the worker exits at the end of the input. The output of the
+ * app is redirected to the standard error. The context can't be passed through the environment of the jsii runtime
+ * once it's started, so the app reads it from the file referred by the {@value #CONTEXT_FILE_VARIABLE_NAME} variable
+ * which is supposed to be updated before each request.
+ */
+public class SynthesisWorker {
+
+    public static final String SYNTHESIZE_REQUEST = "synthesize";
+    public static final String SUCCESS_RESPONSE = "synthesized";
+    public static final String FAILURE_RESPONSE = "failed";
+    public static final String CONTEXT_FILE_VARIABLE_NAME = "CONTEXT_OVERFLOW_LOCATION_ENV";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("The 'app' argument is missing");
+        }
+
+        String appClassName = args[0];
+        String[] appArgs = Arrays.copyOfRange(args, 1, args.length);
+        PrintStream responses = System.out;
+        System.setOut(System.err);
+
+        BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String request;
+        while ((request = requests.readLine()) != null) {
+            if (!request.equals(SYNTHESIZE_REQUEST)) {
+                throw new IllegalArgumentException("Unknown request: " + request);
+            }
+
+            try {
+                Synthesizer.run(appClassName, appArgs);
+                responses.println(SUCCESS_RESPONSE);
+            } catch (Throwable e) {
+                e.printStackTrace(System.err);
+                responses.println(FAILURE_RESPONSE);
+            }
+            responses.flush();
+        }
+        System.exit(0);
+    }
+}
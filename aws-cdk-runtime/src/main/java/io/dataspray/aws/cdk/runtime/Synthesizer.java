@@ -27,7 +27,14 @@ public class Synthesizer {
         }
     }
 
-    private static void run(String appClassName, String[] args) throws Throwable {
+    /**
+     * Synthesizes the cloud assembly in the current JVM. The app class and the CDK classes are loaded using the context
+     * class loader of the current thread.
+     *
+     * @param appClassName the name of the app class
+     * @param args the arguments to be passed to the app
+     */
+    public static void run(String appClassName, String[] args) throws Throwable {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         Class<?> appClass = classLoader.loadClass(appClassName);
         MethodHandle mainMethod = lookupMainMethodHandle(appClass).orElse(null);
@@ -1,22 +1,30 @@
 package io.dataspray.aws.cdk;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awscdk.cloudassembly.schema.*;
-import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
-import software.amazon.awssdk.services.cloudformation.model.Output;
-import software.amazon.awssdk.services.cloudformation.model.Stack;
-import software.amazon.awssdk.services.cloudformation.model.StackStatus;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
-public class AssetDeployer {
+/**
+ * Publishes file and Docker image assets. File assets and Docker images are published concurrently using separate
+ * thread pools, so the number of concurrent uploads and the number of concurrent image builds can be limited
+ * independently.
+ */
+public class AssetDeployer implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(AssetDeployer.class);
 
@@ -24,24 +32,63 @@ public class AssetDeployer {
     public static final String FILE_PACKAGING = "file";
     public static final String IMAGE_PACKAGING = "container-image";
 
-    private static final String BOOTSTRAP_VERSION_OUTPUT = "BootstrapVersion";
-    private static final String BUCKET_NAME_OUTPUT = "BucketName";
-    private static final String BUCKET_DOMAIN_NAME_OUTPUT = "BucketDomainName";
     private static final String ASSET_PREFIX_SEPARATOR = "||";
 
     private final Path cloudAssemblyDirectory;
     private final FileAssetPublisher fileAssetPublisher;
     private final DockerImageAssetPublisher dockerImagePublisher;
     private final EnvironmentResolver environmentResolver;
+    private final AwsClients awsClients;
+    private final ExecutorService fileExecutor;
+    private final ExecutorService imageExecutor;
+    private final boolean replicateFileAssets;
 
+    /**
+     * @param fileConcurrency the maximum number of file assets published concurrently
+     * @param imageConcurrency the maximum number of Docker images built and published concurrently
+     */
+    public AssetDeployer(Path cloudAssemblyDirectory,
+                         FileAssetPublisher fileAssetPublisher,
+                         DockerImageAssetPublisher dockerImagePublisher,
+                         EnvironmentResolver environmentResolver,
+                         AwsClients awsClients,
+                         int fileConcurrency,
+                         int imageConcurrency) {
+        this(cloudAssemblyDirectory, fileAssetPublisher, dockerImagePublisher, environmentResolver, awsClients,
+                fileConcurrency, imageConcurrency, false);
+    }
+
+    /**
+     * @param fileConcurrency the maximum number of file assets published concurrently
+     * @param imageConcurrency the maximum number of Docker images built and published concurrently
+     * @param replicateFileAssets whether a file asset with several destinations is uploaded once and copied by S3 to
+     *                            the other destinations
+     */
     public AssetDeployer(Path cloudAssemblyDirectory,
                          FileAssetPublisher fileAssetPublisher,
                          DockerImageAssetPublisher dockerImagePublisher,
-                         EnvironmentResolver environmentResolver) {
+                         EnvironmentResolver environmentResolver,
+                         AwsClients awsClients,
+                         int fileConcurrency,
+                         int imageConcurrency,
+                         boolean replicateFileAssets) {
+        if (fileConcurrency < 1 || imageConcurrency < 1) {
+            throw new IllegalArgumentException("The asset publishing concurrency must be greater than zero");
+        }
         this.cloudAssemblyDirectory = cloudAssemblyDirectory;
         this.fileAssetPublisher = fileAssetPublisher;
         this.dockerImagePublisher = dockerImagePublisher;
         this.environmentResolver = environmentResolver;
+        this.awsClients = awsClients;
+        this.replicateFileAssets = replicateFileAssets;
+        this.fileExecutor = Executors.newFixedThreadPool(fileConcurrency, new ThreadFactoryBuilder()
+                .setNameFormat("cdk-file-asset-%d")
+                .setDaemon(true)
+                .build());
+        this.imageExecutor = Executors.newFixedThreadPool(imageConcurrency, new ThreadFactoryBuilder()
+                .setNameFormat("cdk-image-asset-%d")
+                .setDaemon(true)
+                .build());
     }
 
     /**
@@ -51,113 +98,223 @@ public class AssetDeployer {
      * @param fileAssets File assets
      */
     public void deploy(Map<String, DockerImageAsset> imageAssets, Map<String, FileAsset> fileAssets) {
-        List<Runnable> publishmentTasks = new ArrayList<>();
+        await(publish(imageAssets, fileAssets));
+    }
 
-        for (Map.Entry<String, DockerImageAsset> imageAssetEntry : imageAssets.entrySet()) {
-            for (Map.Entry<String, DockerImageDestination> destinationEntry : imageAssetEntry.getValue().getDestinations().entrySet()) {
-                ResolvedEnvironment environment = environmentResolver.resolveFromDestination(destinationEntry.getKey());
-                publishmentTasks.add(createImagePublishmentTask(imageAssetEntry.getKey(), imageAssetEntry.getValue(), destinationEntry.getValue(), environment));
+    /**
+     * Starts publishing the assets of the asset manifest. The returned future is completed once all of them are
+     * published.
+     */
+    public CompletableFuture<Void> publish(AssetManifest assetManifest) {
+        return publish(assetManifest.getDockerImages(), assetManifest.getFiles());
+    }
+
+    private CompletableFuture<Void> publish(Map<String, DockerImageAsset> imageAssets, Map<String, FileAsset> fileAssets) {
+        List<PublishmentTask> publishmentTasks = new ArrayList<>();
+        try {
+            for (Map.Entry<String, DockerImageAsset> imageAssetEntry : imageAssets.entrySet()) {
+                if (!imageAssetEntry.getValue().getDestinations().isEmpty()) {
+                    publishmentTasks.add(createImagePublishmentTask(imageAssetEntry.getKey(), imageAssetEntry.getValue()));
+                }
             }
-        }
 
-        for (Map.Entry<String, FileAsset> entry : fileAssets.entrySet()) {
-            FileAsset fileAsset = entry.getValue();
-            Objects.requireNonNull(fileAsset.getSource().getPath(),
-                    "File asset has no path indicating an executable to be called to produce the asset which is not yet supported");
-            for (Map.Entry<String, FileDestination> destinationEntry : fileAsset.getDestinations().entrySet()) {
-                ResolvedEnvironment environment = environmentResolver.resolveFromDestination(destinationEntry.getKey());
-                String bucketName = environment.resolveVariables(destinationEntry.getValue().getBucketName());
-                String objectKey = destinationEntry.getValue().getObjectKey();
-
-                publishmentTasks.add(() -> {
-                    Path file = cloudAssemblyDirectory.resolve(fileAsset.getSource().getPath());
-                    try {
-                        fileAssetPublisher.publish(file, objectKey, bucketName, environment);
-                    } catch (IOException e) {
-                        throw StackDeploymentException.builder(environment)
-                                .withCause("An error occurred while publishing the file asset " + file)
-                                .withCause(e)
-                                .build();
-                    }
-                });
+            for (Map.Entry<String, FileAsset> entry : fileAssets.entrySet()) {
+                FileAsset fileAsset = entry.getValue();
+                Objects.requireNonNull(fileAsset.getSource().getPath(),
+                        "File asset has no path indicating an executable to be called to produce the asset which is not yet supported");
+                if (replicateFileAssets && fileAsset.getDestinations().size() > 1) {
+                    publishmentTasks.add(createReplicatedFilePublishmentTask(fileAsset));
+                    continue;
+                }
+                for (Map.Entry<String, FileDestination> destinationEntry : fileAsset.getDestinations().entrySet()) {
+                    ResolvedEnvironment environment = environmentResolver.resolveFromDestination(destinationEntry.getKey());
+                    String bucketName = environment.resolveVariables(destinationEntry.getValue().getBucketName());
+                    String objectKey = destinationEntry.getValue().getObjectKey();
+
+                    publishmentTasks.add(PublishmentTask.file("s3://" + bucketName + "/" + objectKey, () -> {
+                        Path file = cloudAssemblyDirectory.resolve(fileAsset.getSource().getPath());
+                        try {
+                            fileAssetPublisher.publish(file, objectKey, bucketName, environment);
+                        } catch (IOException e) {
+                            throw StackDeploymentException.builder(environment)
+                                    .withCause("An error occurred while publishing the file asset " + file)
+                                    .withCause(e)
+                                    .build();
+                        }
+                    }));
+                }
             }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        deploy(publishmentTasks);
+        return publish(publishmentTasks);
     }
 
     /**
      * Deploy stack-specific assets returning required parameters for the stack
      *
-     * @param imageAssets Image assets
-     * @param fileAssets File assets
      * @return Parameter map with assets info required for stack deploy
      */
+    public Map<String, ParameterValue> deploy(
+            StackDefinition stack,
+            Path cloudAssemblyDirectory,
+            ResolvedEnvironment environment,
+            ToolkitConfiguration toolkitConfiguration) {
+        return await(publish(stack, cloudAssemblyDirectory, environment, toolkitConfiguration));
+    }
+
     /**
-     *
+     * Starts publishing stack-specific assets. The returned future is completed with the parameters required for the
+     * stack deploy once all of them are published.
      */
-    public Map<String, ParameterValue> deploy(
+    public CompletableFuture<Map<String, ParameterValue>> publish(
             StackDefinition stack,
             Path cloudAssemblyDirectory,
             ResolvedEnvironment environment,
             ToolkitConfiguration toolkitConfiguration) {
-        List<Runnable> publishmentTasks = Lists.newArrayList();
+        List<PublishmentTask> publishmentTasks = Lists.newArrayList();
         Map<String, ParameterValue> assetParameters = Maps.newHashMap();
 
-        Toolkit toolkit = null;
-        for (FileAssetMetadataEntry asset : stack.getFileAssets()) {
-            if (toolkit == null) {
-                toolkit = getToolkit(stack, environment, toolkitConfiguration);
-            }
-            String bucketName = toolkit.getBucketName();
-            String prefix = generatePrefix(asset);
-            String filename = generateFilename(asset);
-            assetParameters.put(asset.getS3BucketParameter(), ParameterValue.value(toolkit.getBucketName()));
-            assetParameters.put(asset.getS3KeyParameter(), ParameterValue.value(String.join(ASSET_PREFIX_SEPARATOR, prefix, filename)));
-            assetParameters.put(asset.getArtifactHashParameter(), ParameterValue.value(asset.getSourceHash()));
-
-            publishmentTasks.add(() -> {
-                Path file = cloudAssemblyDirectory.resolve(asset.getPath());
-                try {
-                    fileAssetPublisher.publish(file, prefix + filename, bucketName, environment);
-                } catch (IOException e) {
-                    throw StackDeploymentException.builder(stack.getStackName(), environment)
-                            .withCause("An error occurred while publishing the file asset " + file)
-                            .withCause(e)
-                            .build();
+        try {
+            Toolkit toolkit = null;
+            for (FileAssetMetadataEntry asset : stack.getFileAssets()) {
+                if (toolkit == null) {
+                    toolkit = awsClients.stacks(environment).getToolkit(stack, environment, toolkitConfiguration);
                 }
-            });
+                String bucketName = toolkit.getBucketName();
+                String prefix = generatePrefix(asset);
+                String filename = generateFilename(asset);
+                assetParameters.put(asset.getS3BucketParameter(), ParameterValue.value(toolkit.getBucketName()));
+                assetParameters.put(asset.getS3KeyParameter(), ParameterValue.value(String.join(ASSET_PREFIX_SEPARATOR, prefix, filename)));
+                assetParameters.put(asset.getArtifactHashParameter(), ParameterValue.value(asset.getSourceHash()));
+
+                publishmentTasks.add(PublishmentTask.file("s3://" + bucketName + "/" + prefix + filename, () -> {
+                    Path file = cloudAssemblyDirectory.resolve(asset.getPath());
+                    try {
+                        fileAssetPublisher.publish(file, prefix + filename, bucketName, environment);
+                    } catch (IOException e) {
+                        throw StackDeploymentException.builder(stack.getStackName(), environment)
+                                .withCause("An error occurred while publishing the file asset " + file)
+                                .withCause(e)
+                                .build();
+                    }
+                }));
+            }
+
+            for (ContainerImageAssetMetadataEntry asset : stack.getImageAssets()) {
+                publishmentTasks.add(createImagePublishmentTask(stack.getStackName(), asset, environment));
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        for (ContainerImageAssetMetadataEntry asset : stack.getImageAssets()) {
-            publishmentTasks.add(createImagePublishmentTask(asset.getId(), asset, environment));
+        return publish(publishmentTasks).thenApply(ignored -> assetParameters);
+    }
+
+    /**
+     * Waits until the assets are published rethrowing the failure of the publishment.
+     */
+    public static <T> T await(CompletableFuture<T> publishment) {
+        try {
+            return publishment.join();
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
         }
+    }
 
-        deploy(publishmentTasks);
+    /**
+     * Runs the publishment tasks concurrently. The returned future is completed once all of them are completed. The
+     * failure of one task doesn't cancel the other ones, all the failures are collected and reported together.
+     */
+    private CompletableFuture<Void> publish(List<PublishmentTask> publishmentTasks) {
+        List<CompletableFuture<Void>> futures = publishmentTasks.stream()
+                .map(task -> CompletableFuture.runAsync(task.getAction(), task.isImage() ? imageExecutor : fileExecutor))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((result, failure) -> {
+            List<String> errors = new ArrayList<>();
+            List<Throwable> causes = new ArrayList<>();
+            for (int i = 0; i < publishmentTasks.size(); i++) {
+                try {
+                    futures.get(i).join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.error("Failed to publish {}", publishmentTasks.get(i).getDescription(), cause);
+                    errors.add(publishmentTasks.get(i).getDescription() + ": " + cause.getMessage());
+                    causes.add(cause);
+                }
+            }
 
-        return assetParameters;
+            if (!causes.isEmpty()) {
+                StackDeploymentException exception = StackDeploymentException.builder()
+                        .withCause(causes.size() == 1
+                                ? errors.get(0)
+                                : "Failed to publish " + causes.size() + " assets:\n" + String.join("\n", errors))
+                        .withCause(causes.get(0))
+                        .build();
+                causes.stream().skip(1).forEach(exception::addSuppressed);
+                throw exception;
+            }
+            return null;
+        });
     }
 
-    private void deploy(List<Runnable> publishmentTasks) {
-        try {
-            publishmentTasks.forEach(Runnable::run);
-        } catch (CdkException e) {
-            throw StackDeploymentException.builder()
-                    .withCause(e.getMessage())
-                    .withCause(e.getCause())
-                    .build();
-        } catch (Exception e) {
-            throw StackDeploymentException.builder()
-                    .withCause(e)
-                    .build();
+    @Override
+    public void close() {
+        fileExecutor.shutdown();
+        imageExecutor.shutdown();
+    }
+
+    /**
+     * Creates a task uploading the file asset once and copying it to the rest of its destinations.
+     */
+    private PublishmentTask createReplicatedFilePublishmentTask(FileAsset fileAsset) {
+        List<FileAssetPublisher.Destination> destinations = new ArrayList<>();
+        for (Map.Entry<String, FileDestination> destinationEntry : fileAsset.getDestinations().entrySet()) {
+            ResolvedEnvironment environment = environmentResolver.resolveFromDestination(destinationEntry.getKey());
+            FileAssetPublisher.Destination destination = new FileAssetPublisher.Destination(
+                    environment.resolveVariables(destinationEntry.getValue().getBucketName()),
+                    destinationEntry.getValue().getObjectKey(),
+                    environment);
+            // The upload goes to the region of this machine, the other destinations are copied from there
+            if (Objects.equals(environment.getRegion(), environmentResolver.getDefaultRegion())) {
+                destinations.add(0, destination);
+            } else {
+                destinations.add(destination);
+            }
         }
+
+        String description = destinations.stream()
+                .map(destination -> "s3://" + destination.getBucketName() + "/" + destination.getObjectName())
+                .collect(Collectors.joining(", "));
+        return PublishmentTask.file(description, () -> {
+            Path file = cloudAssemblyDirectory.resolve(fileAsset.getSource().getPath());
+            try {
+                fileAssetPublisher.publish(file, destinations);
+            } catch (IOException e) {
+                throw StackDeploymentException.builder()
+                        .withCause("An error occurred while publishing the file asset " + file)
+                        .withCause(e)
+                        .build();
+            }
+        });
     }
 
-    private Runnable createImagePublishmentTask(
-            String assetId,
-            DockerImageAsset imageAsset,
-            DockerImageDestination destination,
-            ResolvedEnvironment environment) {
+    /**
+     * Creates a task building the image asset once and pushing it to all of its destinations.
+     */
+    private PublishmentTask createImagePublishmentTask(String assetId, DockerImageAsset imageAsset) {
+        List<DockerImageAssetPublisher.Destination> destinations = new ArrayList<>();
+        ResolvedEnvironment environment = null;
+        for (Map.Entry<String, DockerImageDestination> destinationEntry : imageAsset.getDestinations().entrySet()) {
+            environment = environmentResolver.resolveFromDestination(destinationEntry.getKey());
+            destinations.add(new DockerImageAssetPublisher.Destination(
+                    environment.resolveVariables(destinationEntry.getValue().getRepositoryName()),
+                    destinationEntry.getValue().getImageTag(),
+                    environment));
+        }
         return createImagePublishmentTask(
                 Optional.empty(),
                 assetId,
@@ -165,12 +322,11 @@ public class AssetDeployer {
                 imageAsset.getSource().getDirectory(),
                 imageAsset.getSource().getDockerBuildArgs(),
                 imageAsset.getSource().getDockerBuildTarget(),
-                destination.getRepositoryName(),
-                destination.getImageTag(),
+                destinations,
                 environment);
     }
 
-    private Runnable createImagePublishmentTask(
+    private PublishmentTask createImagePublishmentTask(
             String stackName,
             ContainerImageAssetMetadataEntry asset,
             ResolvedEnvironment environment) {
@@ -181,20 +337,19 @@ public class AssetDeployer {
                 asset.getPath(),
                 asset.getBuildArgs(),
                 asset.getTarget(),
-                asset.getRepositoryName(),
-                asset.getImageTag(),
+                ImmutableList.of(new DockerImageAssetPublisher.Destination(
+                        environment.resolveVariables(asset.getRepositoryName()), asset.getImageTag(), environment)),
                 environment);
     }
 
-    private Runnable createImagePublishmentTask(
+    private PublishmentTask createImagePublishmentTask(
             Optional<String> stackNameOpt,
             String assetId,
             String dockerFile,
             String sourceDirectory,
             Map<String, String> dockerBuildArgs,
             String dockerBuildTarget,
-            String repositoryName,
-            String imageTag,
+            List<DockerImageAssetPublisher.Destination> destinations,
             ResolvedEnvironment environment) {
         Path contextDirectory = cloudAssemblyDirectory.resolve(sourceDirectory);
         if (!Files.exists(contextDirectory)) {
@@ -218,7 +373,10 @@ public class AssetDeployer {
                             .build());
         }
 
-        return () -> {
+        String description = "image asset " + assetId + " (" + destinations.stream()
+                .map(destination -> destination.getRepositoryName() + ":" + destination.getTag())
+                .collect(Collectors.joining(", ")) + ")";
+        return PublishmentTask.image(description, () -> {
             String localTag = String.join("-", "cdkasset", assetId.toLowerCase());
             ImageBuild imageBuild = ImageBuild.builder()
                     .withContextDirectory(contextDirectory)
@@ -227,9 +385,8 @@ public class AssetDeployer {
                     .withArguments(dockerBuildArgs)
                     .withTarget(dockerBuildTarget)
                     .build();
-            String repositoryNameResolved = environment.resolveVariables(repositoryName);
-            dockerImagePublisher.publish(repositoryNameResolved, imageTag, imageBuild, environment);
-        };
+            dockerImagePublisher.publish(imageBuild, destinations);
+        });
     }
 
     private Optional<Path> findDockerfile(Path contextDirectory) {
@@ -266,75 +423,36 @@ public class AssetDeployer {
         return prefix.toString();
     }
 
-    private Toolkit getToolkit(
-            StackDefinition stack,
-            ResolvedEnvironment environment,
-            ToolkitConfiguration toolkitConfiguration) {
-        CloudFormationClient client = CloudFormationClientProvider.get(environment);
-        Stack toolkitStack = Stacks.findStack(client, toolkitConfiguration.getStackName()).orElse(null);
-        if (toolkitStack != null && Stacks.isInProgress(toolkitStack)) {
-            logger.info("Waiting until toolkit stack reaches stable state, environment={}, stackName={}",
-                    environment, toolkitConfiguration.getStackName());
-            toolkitStack = awaitCompletion(toolkitStack, client);
-        }
+    private static class PublishmentTask {
 
-        if (toolkitStack == null || toolkitStack.stackStatus() == StackStatus.DELETE_COMPLETE ||
-                toolkitStack.stackStatus() == StackStatus.ROLLBACK_COMPLETE) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The stack " + stack.getStackName() + " requires a bootstrap. Did you forged to " +
-                            "add 'bootstrap' goal to the execution")
-                    .build();
-        }
+        private final String description;
+        private final boolean image;
+        private final Runnable action;
 
-        if (Stacks.isFailed(toolkitStack)) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The toolkit stack is in failed state. Please make sure that the toolkit stack is " +
-                            "stable before the deployment")
-                    .build();
+        private PublishmentTask(String description, boolean image, Runnable action) {
+            this.description = description;
+            this.image = image;
+            this.action = action;
         }
 
-        Map<String, String> outputs = toolkitStack.outputs().stream()
-                .collect(Collectors.toMap(Output::outputKey, Output::outputValue));
-
-        if (stack.getRequiredToolkitStackVersion() != null) {
-            Integer toolkitStackVersion = Optional.ofNullable(outputs.get(BOOTSTRAP_VERSION_OUTPUT))
-                    .map(Integer::parseInt)
-                    .orElse(0);
-            if (toolkitStackVersion < stack.getRequiredToolkitStackVersion()) {
-                throw StackDeploymentException.builder(stack.getStackName(), environment)
-                        .withCause("The toolkit stack version is lower than the minimum version required by the " +
-                                "stack. Please update the toolkit stack or add 'bootstrap' goal to the plugin " +
-                                "execution if you want the plugin to automatically create or update toolkit stack")
-                        .build();
-            }
+        public static PublishmentTask file(String description, Runnable action) {
+            return new PublishmentTask(description, false, action);
         }
 
-        String bucketName = outputs.get(BUCKET_NAME_OUTPUT);
-        if (bucketName == null) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The toolkit stack " + toolkitConfiguration.getStackName() + " doesn't have a " +
-                            "required output '" + BUCKET_NAME_OUTPUT + "'")
-                    .build();
+        public static PublishmentTask image(String description, Runnable action) {
+            return new PublishmentTask(description, true, action);
         }
 
-        String bucketDomainName = outputs.get(BUCKET_DOMAIN_NAME_OUTPUT);
-        if (bucketDomainName == null) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The toolkit stack " + toolkitConfiguration.getStackName() + " doesn't have a " +
-                            "required output '" + BUCKET_DOMAIN_NAME_OUTPUT + "'")
-                    .build();
+        public String getDescription() {
+            return description;
         }
 
-        return new Toolkit(bucketName, bucketDomainName);
-    }
+        public boolean isImage() {
+            return image;
+        }
 
-    private Stack awaitCompletion(Stack stack, CloudFormationClient client) {
-        Stack completedStack;
-        if (logger.isInfoEnabled()) {
-            completedStack = Stacks.awaitCompletion(client, stack, new LoggingStackEventListener(Stacks.lastChange(stack)));
-        } else {
-            completedStack = Stacks.awaitCompletion(client, stack);
+        public Runnable getAction() {
+            return action;
         }
-        return completedStack;
     }
 }
@@ -0,0 +1,110 @@
+package io.dataspray.aws.cdk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.core.client.builder.SdkSyncClientBuilder;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ecr.EcrClient;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.route53.Route53Client;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Creates and caches AWS clients per service and environment. All the clients share a single HTTP client, so the
+ * connections are pooled across the services. The clients and the HTTP client are released once the registry is
+ * closed. The registry also keeps a {@link StackSnapshot} per environment, so the state of the stacks is shared by all
+ * the components deploying to the environment.
+ */
+public class AwsClients implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AwsClients.class);
+
+    private final SdkHttpClient httpClient;
+    private final ConcurrentMap<String, SdkClient> clients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, StackSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public AwsClients() {
+        this.httpClient = ApacheHttpClient.builder()
+                .maxConnections(200)
+                .connectionAcquisitionTimeout(Duration.ofSeconds(60))
+                .connectionMaxIdleTime(Duration.ofSeconds(60))
+                .socketTimeout(Duration.ofSeconds(60))
+                .build();
+    }
+
+    public CloudFormationClient cloudFormation(ResolvedEnvironment environment) {
+        return getClient(CloudFormationClient.class, environment, env -> configure(CloudFormationClient.builder(), env)
+                .region(env.getRegion())
+                .build());
+    }
+
+    public EcrClient ecr(ResolvedEnvironment environment) {
+        return getClient(EcrClient.class, environment, env -> configure(EcrClient.builder(), env)
+                .region(env.getRegion())
+                .build());
+    }
+
+    public Ec2Client ec2(ResolvedEnvironment environment) {
+        return getClient(Ec2Client.class, environment, env -> configure(Ec2Client.builder(), env)
+                .region(env.getRegion())
+                .build());
+    }
+
+    public LambdaClient lambda(ResolvedEnvironment environment) {
+        return getClient(LambdaClient.class, environment, env -> configure(LambdaClient.builder(), env)
+                .region(env.getRegion())
+                .build());
+    }
+
+    public SsmClient ssm(ResolvedEnvironment environment) {
+        return getClient(SsmClient.class, environment, env -> configure(SsmClient.builder(), env)
+                .region(env.getRegion())
+                .build());
+    }
+
+    public Route53Client route53(ResolvedEnvironment environment) {
+        return getClient(Route53Client.class, environment, env -> configure(Route53Client.builder(), env)
+                .region(Region.AWS_GLOBAL)
+                .build());
+    }
+
+    StackSnapshot stacks(ResolvedEnvironment environment) {
+        return snapshots.computeIfAbsent(environment.getClientKey(), key -> new StackSnapshot(cloudFormation(environment)));
+    }
+
+    private <C extends SdkClient> C getClient(Class<C> clientType, ResolvedEnvironment environment, Function<ResolvedEnvironment, C> factory) {
+        String key = clientType.getSimpleName() + ":" + environment.getClientKey();
+        return clientType.cast(clients.computeIfAbsent(key, k -> factory.apply(environment)));
+    }
+
+    private <B extends AwsClientBuilder<B, C> & SdkSyncClientBuilder<B, C>, C> B configure(B builder, ResolvedEnvironment environment) {
+        return builder.httpClient(httpClient)
+                .credentialsProvider(environment.getCredentialsProvider())
+                .endpointOverride(environment.getEndpointUriOpt().orElse(null));
+    }
+
+    @Override
+    public void close() {
+        clients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (Exception e) {
+                logger.debug("Unable to close {} client", client.serviceName(), e);
+            }
+        });
+        clients.clear();
+        snapshots.clear();
+        httpClient.close();
+    }
+}
@@ -81,23 +81,24 @@ public class BootstrapImpl implements Bootstrap {
                         )
                 ));
 
-        environments.forEach((environment, version) -> {
-            ResolvedEnvironment resolvedEnvironment = environmentResolver.resolve(environment);
-            if (version > TOOLKIT_STACK_VERSION) {
-                throw BootstrapException.deploymentError(toolkitStackName, resolvedEnvironment)
-                        .withCause("One of the stacks requires toolkit stack version " + version + " which is not " +
-                                "supported by the plugin. Please try to update the plugin version in order to fix the problem")
-                        .build();
-            }
-            bootstrap(toolkitStackName,
-                    bootstrapParameters != null ? bootstrapParameters : ImmutableMap.of(),
-                    bootstrapTags != null ? bootstrapTags : ImmutableMap.of(),
-                    resolvedEnvironment, version);
-        });
+        try (AwsClients awsClients = new AwsClients()) {
+            environments.forEach((environment, version) -> {
+                ResolvedEnvironment resolvedEnvironment = environmentResolver.resolve(environment);
+                if (version > TOOLKIT_STACK_VERSION) {
+                    throw BootstrapException.deploymentError(toolkitStackName, resolvedEnvironment)
+                            .withCause("One of the stacks requires toolkit stack version " + version + " which is not " +
+                                    "supported by the plugin. Please try to update the plugin version in order to fix the problem")
+                            .build();
+                }
+                bootstrap(awsClients.cloudFormation(resolvedEnvironment), toolkitStackName,
+                        bootstrapParameters != null ? bootstrapParameters : ImmutableMap.of(),
+                        bootstrapTags != null ? bootstrapTags : ImmutableMap.of(),
+                        resolvedEnvironment, version);
+            });
+        }
     }
 
-    private void bootstrap(String toolkitStackName, Map<String, String> bootstrapParameters, Map<String, String> bootstrapTags, ResolvedEnvironment environment, int version) {
-        CloudFormationClient client = CloudFormationClientProvider.get(environment);
+    private void bootstrap(CloudFormationClient client, String toolkitStackName, Map<String, String> bootstrapParameters, Map<String, String> bootstrapTags, ResolvedEnvironment environment, int version) {
 
         Stack toolkitStack = Stacks.findStack(client, toolkitStackName).orElse(null);
         if (toolkitStack != null) {
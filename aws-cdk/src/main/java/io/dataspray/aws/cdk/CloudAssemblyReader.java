@@ -0,0 +1,236 @@
+package io.dataspray.aws.cdk;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awscdk.cloudassembly.schema.AssetManifest;
+import software.amazon.awscdk.cloudassembly.schema.ContainerImageAssetCacheOption;
+import software.amazon.awscdk.cloudassembly.schema.ContainerImageAssetMetadataEntry;
+import software.amazon.awscdk.cloudassembly.schema.DockerCacheOption;
+import software.amazon.awscdk.cloudassembly.schema.DockerImageAsset;
+import software.amazon.awscdk.cloudassembly.schema.DockerImageDestination;
+import software.amazon.awscdk.cloudassembly.schema.DockerImageSource;
+import software.amazon.awscdk.cloudassembly.schema.FileAsset;
+import software.amazon.awscdk.cloudassembly.schema.FileAssetMetadataEntry;
+import software.amazon.awscdk.cloudassembly.schema.FileAssetPackaging;
+import software.amazon.awscdk.cloudassembly.schema.FileDestination;
+import software.amazon.awscdk.cloudassembly.schema.FileSource;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Reads the cloud assembly manifest, the asset manifests and the templates directly from the cloud assembly directory.
+ * The schema objects are created using their builders, so reading the cloud assembly doesn't require the jsii runtime.
+ */
+class CloudAssemblyReader {
+
+    static final String STACK_ARTIFACT_TYPE = "aws:cloudformation:stack";
+    static final String ASSET_MANIFEST_ARTIFACT_TYPE = "cdk:asset-manifest";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> OBJECT_TYPE = new TypeReference<Map<String, Object>>() {};
+    private static final TypeReference<Map<String, String>> STRING_MAP_TYPE = new TypeReference<Map<String, String>>() {};
+    private static final TypeReference<List<String>> STRING_LIST_TYPE = new TypeReference<List<String>>() {};
+
+    private CloudAssemblyReader() {
+    }
+
+    static JsonNode readManifest(Path file) {
+        try {
+            return MAPPER.readTree(file.toFile());
+        } catch (IOException e) {
+            throw new CdkException("Unable to read the manifest " + file, e);
+        }
+    }
+
+    static Map<String, Object> readTemplate(Path file) {
+        try {
+            return MAPPER.readValue(file.toFile(), OBJECT_TYPE);
+        } catch (IOException e) {
+            throw new CdkException("Unable to read the template " + file, e);
+        }
+    }
+
+    static Map<String, Object> parseTemplate(String templateBody) {
+        try {
+            return MAPPER.readValue(templateBody, OBJECT_TYPE);
+        } catch (IOException e) {
+            throw new CdkException("Unable to parse the template", e);
+        }
+    }
+
+    static AssetManifest readAssetManifest(JsonNode assetManifest) {
+        return AssetManifest.builder()
+                .version(Objects.requireNonNullElse(getString(assetManifest, "version"), ""))
+                .files(readFileAssets(assetManifest))
+                .dockerImages(readImageAssets(assetManifest))
+                .build();
+    }
+
+    static Map<String, FileAsset> readFileAssets(JsonNode assetManifest) {
+        return readMap(assetManifest.path("files"), asset -> FileAsset.builder()
+                .source(FileSource.builder()
+                        .path(getString(asset.path("source"), "path"))
+                        .packaging(getPackaging(asset.path("source")))
+                        .executable(getStringList(asset.path("source"), "executable"))
+                        .build())
+                .destinations(readMap(asset.path("destinations"), destination -> FileDestination.builder()
+                        .bucketName(getString(destination, "bucketName"))
+                        .objectKey(getString(destination, "objectKey"))
+                        .region(getString(destination, "region"))
+                        .assumeRoleArn(getString(destination, "assumeRoleArn"))
+                        .assumeRoleExternalId(getString(destination, "assumeRoleExternalId"))
+                        .assumeRoleAdditionalOptions(getObject(destination, "assumeRoleAdditionalOptions"))
+                        .build()))
+                .build());
+    }
+
+    static Map<String, DockerImageAsset> readImageAssets(JsonNode assetManifest) {
+        return readMap(assetManifest.path("dockerImages"), asset -> {
+            JsonNode source = asset.path("source");
+            return DockerImageAsset.builder()
+                    .source(DockerImageSource.builder()
+                            .directory(getString(source, "directory"))
+                            .executable(getStringList(source, "executable"))
+                            .dockerFile(getString(source, "dockerFile"))
+                            .dockerBuildTarget(getString(source, "dockerBuildTarget"))
+                            .dockerBuildArgs(getStringMap(source, "dockerBuildArgs"))
+                            .dockerBuildSecrets(getStringMap(source, "dockerBuildSecrets"))
+                            .dockerBuildSsh(getString(source, "dockerBuildSsh"))
+                            .dockerOutputs(getStringList(source, "dockerOutputs"))
+                            .networkMode(getString(source, "networkMode"))
+                            .platform(getString(source, "platform"))
+                            .cacheDisabled(getBoolean(source, "cacheDisabled"))
+                            .cacheFrom(getList(source, "cacheFrom", CloudAssemblyReader::getDockerCacheOption))
+                            .cacheTo(source.hasNonNull("cacheTo") ? getDockerCacheOption(source.get("cacheTo")) : null)
+                            .build())
+                    .destinations(readMap(asset.path("destinations"), destination -> DockerImageDestination.builder()
+                            .repositoryName(getString(destination, "repositoryName"))
+                            .imageTag(getString(destination, "imageTag"))
+                            .region(getString(destination, "region"))
+                            .assumeRoleArn(getString(destination, "assumeRoleArn"))
+                            .assumeRoleExternalId(getString(destination, "assumeRoleExternalId"))
+                            .assumeRoleAdditionalOptions(getObject(destination, "assumeRoleAdditionalOptions"))
+                            .build()))
+                    .build();
+        });
+    }
+
+    static FileAssetMetadataEntry readFileAssetMetadataEntry(JsonNode data) {
+        return FileAssetMetadataEntry.builder()
+                .id(getString(data, "id"))
+                .packaging(getString(data, "packaging"))
+                .path(getString(data, "path"))
+                .sourceHash(getString(data, "sourceHash"))
+                .s3BucketParameter(getString(data, "s3BucketParameter"))
+                .s3KeyParameter(getString(data, "s3KeyParameter"))
+                .artifactHashParameter(getString(data, "artifactHashParameter"))
+                .build();
+    }
+
+    static ContainerImageAssetMetadataEntry readContainerImageAssetMetadataEntry(JsonNode data) {
+        return ContainerImageAssetMetadataEntry.builder()
+                .id(getString(data, "id"))
+                .packaging(getString(data, "packaging"))
+                .path(getString(data, "path"))
+                .sourceHash(getString(data, "sourceHash"))
+                .buildArgs(getStringMap(data, "buildArgs"))
+                .buildSecrets(getStringMap(data, "buildSecrets"))
+                .buildSsh(getString(data, "buildSsh"))
+                .cacheDisabled(getBoolean(data, "cacheDisabled"))
+                .cacheFrom(getList(data, "cacheFrom", CloudAssemblyReader::getContainerImageAssetCacheOption))
+                .cacheTo(data.hasNonNull("cacheTo") ? getContainerImageAssetCacheOption(data.get("cacheTo")) : null)
+                .file(getString(data, "file"))
+                .imageTag(getString(data, "imageTag"))
+                .networkMode(getString(data, "networkMode"))
+                .outputs(getStringList(data, "outputs"))
+                .platform(getString(data, "platform"))
+                .repositoryName(getString(data, "repositoryName"))
+                .target(getString(data, "target"))
+                .build();
+    }
+
+    static <T> Map<String, T> readMap(JsonNode node, Function<JsonNode, T> reader) {
+        Map<String, T> result = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            result.put(field.getKey(), reader.apply(field.getValue()));
+        }
+        return result;
+    }
+
+    @Nullable
+    static String getString(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+
+    @Nullable
+    static Map<String, String> getStringMap(JsonNode node, String field) {
+        return node.hasNonNull(field) ? MAPPER.convertValue(node.get(field), STRING_MAP_TYPE) : null;
+    }
+
+    @Nullable
+    private static Boolean getBoolean(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asBoolean() : null;
+    }
+
+    @Nullable
+    private static List<String> getStringList(JsonNode node, String field) {
+        return node.hasNonNull(field) ? MAPPER.convertValue(node.get(field), STRING_LIST_TYPE) : null;
+    }
+
+    @Nullable
+    private static Map<String, Object> getObject(JsonNode node, String field) {
+        return node.hasNonNull(field) ? MAPPER.convertValue(node.get(field), OBJECT_TYPE) : null;
+    }
+
+    @Nullable
+    private static <T> List<T> getList(JsonNode node, String field, Function<JsonNode, T> reader) {
+        if (!node.hasNonNull(field)) {
+            return null;
+        }
+        List<T> result = new ArrayList<>();
+        node.get(field).forEach(element -> result.add(reader.apply(element)));
+        return result;
+    }
+
+    @Nullable
+    private static FileAssetPackaging getPackaging(JsonNode source) {
+        String packaging = getString(source, "packaging");
+        if (packaging == null) {
+            return null;
+        }
+        switch (packaging) {
+            case AssetDeployer.FILE_PACKAGING:
+                return FileAssetPackaging.FILE;
+            case AssetDeployer.ZIP_PACKAGING:
+                return FileAssetPackaging.ZIP_DIRECTORY;
+            default:
+                throw new CdkException("Unknown file asset packaging type " + packaging);
+        }
+    }
+
+    private static DockerCacheOption getDockerCacheOption(JsonNode node) {
+        return DockerCacheOption.builder()
+                .type(getString(node, "type"))
+                .params(getStringMap(node, "params"))
+                .build();
+    }
+
+    private static ContainerImageAssetCacheOption getContainerImageAssetCacheOption(JsonNode node) {
+        return ContainerImageAssetCacheOption.builder()
+                .type(getString(node, "type"))
+                .params(getStringMap(node, "params"))
+                .build();
+    }
+}
@@ -1,5 +1,6 @@
 package io.dataspray.aws.cdk;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -7,13 +8,12 @@ import com.google.common.collect.Maps;
 import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awscdk.cloudassembly.schema.*;
-import software.amazon.awscdk.cxapi.CloudArtifact;
+import software.amazon.awscdk.cloudassembly.schema.AssetManifest;
+import software.amazon.awscdk.cloudassembly.schema.ContainerImageAssetMetadataEntry;
+import software.amazon.awscdk.cloudassembly.schema.DockerImageAsset;
+import software.amazon.awscdk.cloudassembly.schema.FileAsset;
+import software.amazon.awscdk.cloudassembly.schema.FileAssetMetadataEntry;
 import software.amazon.awscdk.cxapi.CloudAssembly;
-import software.amazon.jsii.JsiiObject;
-import software.amazon.jsii.Kernel;
-import software.amazon.jsii.NativeType;
-import software.amazon.jsii.UnsafeCast;
 
 import javax.annotation.Nonnull;
 import java.nio.file.Files;
@@ -22,7 +22,6 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class CloudDefinition {
 
@@ -32,11 +31,18 @@ public class CloudDefinition {
     private final List<StackDefinition> stacks;
     private final Map<String, FileAsset> fileAssets;
     private final Map<String, DockerImageAsset> imageAssets;
+    private final Map<String, AssetManifest> assetManifests;
 
-    private CloudDefinition(Path cloudAssemblyDirectory, List<StackDefinition> stacks,
-                            Map<String, FileAsset> fileAssets, Map<String, DockerImageAsset> imageAssets) {
+    private CloudDefinition(Path cloudAssemblyDirectory, List<StackDefinition> stacks, Map<String, AssetManifest> assetManifests) {
         this.cloudAssemblyDirectory = cloudAssemblyDirectory;
         this.stacks = ImmutableList.copyOf(stacks);
+        this.assetManifests = ImmutableMap.copyOf(assetManifests);
+        Map<String, FileAsset> fileAssets = Maps.newHashMap();
+        Map<String, DockerImageAsset> imageAssets = Maps.newHashMap();
+        assetManifests.values().forEach(assetManifest -> {
+            fileAssets.putAll(assetManifest.getFiles());
+            imageAssets.putAll(assetManifest.getDockerImages());
+        });
         this.fileAssets = ImmutableMap.copyOf(fileAssets);
         this.imageAssets = ImmutableMap.copyOf(imageAssets);
     }
@@ -62,6 +68,32 @@ public class CloudDefinition {
         return imageAssets;
     }
 
+    /**
+     * Returns the asset manifests by the ids of their artifacts. The stacks depend on the artifacts of the asset
+     * manifests containing their assets.
+     */
+    @Nonnull
+    public Map<String, AssetManifest> getAssetManifests() {
+        return assetManifests;
+    }
+
+    /**
+     * Returns the asset manifests the given stacks depend on by the ids of their artifacts.
+     */
+    @Nonnull
+    public Map<String, AssetManifest> getAssetManifests(Collection<StackDefinition> stacks) {
+        Map<String, AssetManifest> result = new LinkedHashMap<>();
+        for (StackDefinition stack : stacks) {
+            for (String dependency : stack.getDependencies()) {
+                AssetManifest assetManifest = assetManifests.get(dependency);
+                if (assetManifest != null) {
+                    result.put(dependency, assetManifest);
+                }
+            }
+        }
+        return result;
+    }
+
     @Nonnull
     public Path getCloudAssemblyDirectory() {
         return cloudAssemblyDirectory;
@@ -81,98 +113,109 @@ public class CloudDefinition {
             throw new CdkException("The cloud assembly directory " + cloudAssemblyDirectory + " doesn't exist. " +
                     "Did you forget to add 'synth' goal to the execution?");
         }
-        return create(new CloudAssembly(cloudAssemblyDirectory.toString()));
+
+        // The manifests are read directly instead of using CloudAssembly to avoid the startup of the jsii runtime and
+        // the marshalling of the templates across the process boundary
+        JsonNode assemblyManifest = CloudAssemblyReader.readManifest(cloudAssemblyDirectory.resolve("manifest.json"));
+        Map<String, JsonNode> artifacts = CloudAssemblyReader.readMap(assemblyManifest.path("artifacts"), Function.identity());
+
+        Map<String, AssetManifest> assetManifests = new LinkedHashMap<>();
+        artifacts.forEach((artifactId, artifact) -> {
+            String assetManifestFile = CloudAssemblyReader.getString(artifact.path("properties"), "file");
+            if (CloudAssemblyReader.ASSET_MANIFEST_ARTIFACT_TYPE.equals(CloudAssemblyReader.getString(artifact, "type")) && assetManifestFile != null) {
+                assetManifests.put(artifactId, CloudAssemblyReader.readAssetManifest(
+                        CloudAssemblyReader.readManifest(cloudAssemblyDirectory.resolve(assetManifestFile))));
+            }
+        });
+
+        Map<String, StackDefinition> stacks = new LinkedHashMap<>();
+        artifacts.forEach((artifactId, artifact) -> {
+            if (CloudAssemblyReader.STACK_ARTIFACT_TYPE.equals(CloudAssemblyReader.getString(artifact, "type"))) {
+                stacks.put(artifactId, createStackDefinition(cloudAssemblyDirectory, artifactId, artifact));
+            }
+        });
+
+        Set<String> visited = new HashSet<>();
+        List<StackDefinition> sortedStacks = new ArrayList<>();
+        stacks.keySet().forEach(artifactId -> sortTopologically(artifactId, stacks, visited, sortedStacks::add));
+        return new CloudDefinition(cloudAssemblyDirectory, sortedStacks, assetManifests);
     }
 
     public static CloudDefinition create(CloudAssembly cloudAssembly) {
-        Path cloudAssemblyDirectory = Paths.get(cloudAssembly.getDirectory());
-        // Do not use the following since it returns the outdated internally bundled cloud schema class
-        // in the package software.amazon.awscdk.cloud_assembly_schema.AssemblyManifest
-        //        cloudAssembly.getManifest();
-        //        Kernel.get(cloudAssembly, "manifest", NativeType.forClass(AssemblyManifest.class));
-        AssemblyManifest assemblyManifest = Manifest.loadAssemblyManifest(cloudAssemblyDirectory.resolve("manifest.json").toString());
+        return create(Paths.get(cloudAssembly.getDirectory()));
+    }
 
-        Map<String, FileAsset> fileAssets = Maps.newHashMap();
-        Map<String, DockerImageAsset> imageAssets = Maps.newHashMap();
-        if (assemblyManifest.getArtifacts() != null) {
-            assemblyManifest.getArtifacts().values().stream()
-                    .filter(artifactManifest -> ArtifactType.ASSET_MANIFEST.equals(artifactManifest.getType()))
-                    .map(artifactManifest -> UnsafeCast.unsafeCast((JsiiObject) artifactManifest.getProperties(), AssetManifestProperties.class))
-                    .map(AssetManifestProperties::getFile)
-                    .map(assetManifestFile -> Manifest.loadAssetManifest(cloudAssemblyDirectory.resolve(assetManifestFile).toString()))
-                    .forEach(assetManifest -> {
-                        if (assetManifest.getFiles() != null) {
-                            fileAssets.putAll(assetManifest.getFiles());
-                        }
-                        if (assetManifest.getDockerImages() != null) {
-                            imageAssets.putAll(assetManifest.getDockerImages());
-                        }
-                    });
+    private static StackDefinition createStackDefinition(Path cloudAssemblyDirectory, String artifactId, JsonNode artifact) {
+        JsonNode properties = artifact.path("properties");
+        String templateFile = CloudAssemblyReader.getString(properties, "templateFile");
+        if (templateFile == null) {
+            throw new CdkException("Invalid CloudFormation stack artifact " + artifactId + ". Missing \"templateFile\" " +
+                    "property in cloud assembly manifest");
+        }
+        String environment = CloudAssemblyReader.getString(artifact, "environment");
+        if (environment == null) {
+            throw new CdkException("Invalid CloudFormation stack artifact " + artifactId + ". Missing environment");
         }
 
-        Map<String, StackDefinition> stacks = cloudAssembly.getStacks().stream()
-                .map(stack -> {
-                    String artifactId = stack.getId();
-                    String stackName = ObjectUtils.firstNonNull(stack.getDisplayName(), artifactId);
-                    Integer requiredToolkitStackVersion = Optional.ofNullable(stack.getRequiresBootstrapStackVersion())
-                            .map(Number::intValue)
-                            .orElse(null);
-                    Map<String, Object> template = (Map<String, Object>) stack.getTemplate();
-                    Map<String, Map<String, Object>> resources = (Map<String, Map<String, Object>>) template.getOrDefault("Resources", ImmutableMap.of());
-                    Map<String, ParameterDefinition> parameters = getParameterDefinitions(template);
-                    Map<String, String> parameterValues = stack.getParameters();
-
-                    List<FileAssetMetadataEntry> stackFileAssets = Lists.newArrayList();
-                    List<ContainerImageAssetMetadataEntry> stackImageAssets = Lists.newArrayList();
-                    stack.findMetadataByType(MetadataTypes.ASSET).forEach(entry -> {
-                        if (entry.getData() == null) {
-                            return;
-                        }
-                        String packaging = Kernel.get(entry.getData(), "packaging", NativeType.forClass(String.class));
-                        if (packaging == null) {
-                            throw new CdkException("Manifest asset with missing packaging under data for path " + entry.getPath());
-                        }
-                        switch (packaging) {
-                            case AssetDeployer.ZIP_PACKAGING:
-                            case AssetDeployer.FILE_PACKAGING:
-                                stackFileAssets.add(UnsafeCast.unsafeCast((JsiiObject) entry.getData(), FileAssetMetadataEntry.class));
-                                break;
-                            case AssetDeployer.IMAGE_PACKAGING:
-                                stackImageAssets.add(UnsafeCast.unsafeCast((JsiiObject) entry.getData(), ContainerImageAssetMetadataEntry.class));
-                                break;
-                            default:
-                                throw new CdkException("Unknown manifest asset packaging type " + packaging + " for path " + entry.getPath());
-                        }
-                    });
-
-                    return StackDefinition.builder()
-                            .stackName(stackName)
-                            .template(template)
-                            .fileAssets(stackFileAssets)
-                            .imageAssets(stackImageAssets)
-                            .environment("aws://" + stack.getEnvironment().getAccount() + "/" + stack.getEnvironment().getRegion())
-                            .requiredToolkitStackVersion(requiredToolkitStackVersion)
-                            .parameters(parameters)
-                            .parameterValues(parameterValues)
-                            .resources(resources)
-                            .dependencies(Lists.transform(stack.getDependencies(), CloudArtifact::getId))
-                            .build();
-                })
-                .collect(Collectors.toMap(StackDefinition::getStackName, Function.identity()));
-
-        Set<String> visited = new HashSet<>();
-        List<StackDefinition> sortedStacks = new ArrayList<>();
-        stacks.keySet().forEach(stackName -> sortTopologically(stackName, stacks, visited, sortedStacks::add));
-        return new CloudDefinition(cloudAssemblyDirectory, sortedStacks, fileAssets, imageAssets);
+        // Matches the display name of the stack artifact
+        String hierarchicalId = ObjectUtils.firstNonNull(CloudAssemblyReader.getString(artifact, "displayName"), artifactId);
+        String stackName = ObjectUtils.firstNonNull(CloudAssemblyReader.getString(properties, "stackName"), artifactId);
+        String displayName = stackName.equals(artifactId) ? hierarchicalId : hierarchicalId + " (" + stackName + ")";
+
+        Integer requiredToolkitStackVersion = properties.hasNonNull("requiresBootstrapStackVersion")
+                ? properties.get("requiresBootstrapStackVersion").asInt()
+                : null;
+        Path templatePath = cloudAssemblyDirectory.resolve(templateFile);
+        Map<String, String> parameterValues = Optional.ofNullable(CloudAssemblyReader.getStringMap(properties, "parameters"))
+                .orElse(ImmutableMap.of());
+
+        List<FileAssetMetadataEntry> stackFileAssets = Lists.newArrayList();
+        List<ContainerImageAssetMetadataEntry> stackImageAssets = Lists.newArrayList();
+        artifact.path("metadata").forEach(entries -> entries.forEach(entry -> {
+            if (!MetadataTypes.ASSET.equals(CloudAssemblyReader.getString(entry, "type")) || !entry.hasNonNull("data")) {
+                return;
+            }
+            JsonNode data = entry.get("data");
+            String packaging = CloudAssemblyReader.getString(data, "packaging");
+            if (packaging == null) {
+                throw new CdkException("Manifest asset with missing packaging under data for path " + CloudAssemblyReader.getString(data, "path"));
+            }
+            switch (packaging) {
+                case AssetDeployer.ZIP_PACKAGING:
+                case AssetDeployer.FILE_PACKAGING:
+                    stackFileAssets.add(CloudAssemblyReader.readFileAssetMetadataEntry(data));
+                    break;
+                case AssetDeployer.IMAGE_PACKAGING:
+                    stackImageAssets.add(CloudAssemblyReader.readContainerImageAssetMetadataEntry(data));
+                    break;
+                default:
+                    throw new CdkException("Unknown manifest asset packaging type " + packaging + " for path " + CloudAssemblyReader.getString(data, "path"));
+            }
+        }));
+
+        List<String> dependencies = new ArrayList<>();
+        artifact.path("dependencies").forEach(dependency -> dependencies.add(dependency.asText()));
+
+        return StackDefinition.builder()
+                .artifactId(artifactId)
+                .stackName(displayName)
+                .template(templatePath)
+                .fileAssets(stackFileAssets)
+                .imageAssets(stackImageAssets)
+                .environment(environment)
+                .requiredToolkitStackVersion(requiredToolkitStackVersion)
+                .parameterValues(parameterValues)
+                .dependencies(dependencies)
+                .build();
     }
 
-    private static void sortTopologically(String stackName,
+    private static void sortTopologically(String artifactId,
                                           Map<String, StackDefinition> stacks,
                                           Set<String> visited,
                                           Consumer<StackDefinition> consumer) {
-        if (!visited.contains(stackName)) {
-            visited.add(stackName);
-            StackDefinition definition = stacks.get(stackName);
+        if (!visited.contains(artifactId)) {
+            visited.add(artifactId);
+            StackDefinition definition = stacks.get(artifactId);
             if (definition != null) {
                 for (String dependency : definition.getDependencies()) {
                     sortTopologically(dependency, stacks, visited, consumer);
@@ -181,16 +224,4 @@ public class CloudDefinition {
             }
         }
     }
-
-    private static Map<String, ParameterDefinition> getParameterDefinitions(Map<String, Object> template) {
-        Map<String, Map<String, Object>> parameters = (Map<String, Map<String, Object>>) template.getOrDefault("Parameters", Collections.emptyMap());
-
-        return parameters.entrySet().stream()
-                .map(parameter -> {
-                    String name = parameter.getKey();
-                    Object defaultValue = parameter.getValue().get("Default");
-                    return new ParameterDefinition(name, defaultValue);
-                })
-                .collect(Collectors.toMap(ParameterDefinition::getName, Function.identity()));
-    }
 }
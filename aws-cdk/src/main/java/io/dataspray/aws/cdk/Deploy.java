@@ -35,6 +35,32 @@ public interface Deploy {
             Optional<String> profileOpt,
             Optional<String> endpointUrlOpt);
 
+    /**
+     * Deploy the synthesized templates to AWS
+     *
+     * @param cloudAssemblyDirectory Directory of synthesized stack(s)
+     * @param toolkitStackName The name of the CDK toolkit stack.
+     * @param stacks Stacks, for which bootstrapping will be performed if it's required.
+     * @param parameters Input parameters for the stacks. For the new stacks, all the parameters without a default value
+     * must be
+     * specified. In the case of an update, existing values will be reused.
+     * @param tags Tags that will be added to the stacks.
+     * @param notificationArns SNS ARNs to publish stack related events.
+     * @param profileOpt Optional AWS account profile name
+     * @param endpointUrlOpt Optional endpoint URL for testing when mocking out AWS services
+     * @param configuration Tuning options of the deployment
+     */
+    void execute(
+            Path cloudAssemblyDirectory,
+            String toolkitStackName,
+            Set<String> stacks,
+            Map<String, String> parameters,
+            Map<String, String> tags,
+            Set<String> notificationArns,
+            Optional<String> profileOpt,
+            Optional<String> endpointUrlOpt,
+            DeployConfiguration configuration);
+
     /**
      * Deploy the synthesized templates to AWS for all stacks
      *
@@ -86,4 +112,29 @@ public interface Deploy {
             Set<String> notificationArns,
             Optional<String> profileOpt,
             Optional<String> endpointUrlOpt);
+
+    /**
+     * Deploy the synthesized templates to AWS
+     *
+     * @param cloudAssembly Cloud assembly created via app.synth()
+     * @param toolkitStackName The name of the CDK toolkit stack.
+     * @param stacks Stacks, for which bootstrapping will be performed if it's required.
+     * @param parameters Input parameters for the stacks. For the new stacks, all the parameters without a default value
+     * must be specified. In the case of an update, existing values will be reused.
+     * @param tags Tags that will be added to the stacks.
+     * @param notificationArns SNS ARNs to publish stack related events.
+     * @param profileOpt Optional AWS account profile name
+     * @param endpointUrlOpt Optional endpoint URL for testing when mocking out AWS services
+     * @param configuration Tuning options of the deployment
+     */
+    void execute(
+            CloudAssembly cloudAssembly,
+            String toolkitStackName,
+            Set<String> stacks,
+            Map<String, String> parameters,
+            Map<String, String> tags,
+            Set<String> notificationArns,
+            Optional<String> profileOpt,
+            Optional<String> endpointUrlOpt,
+            DeployConfiguration configuration);
 }
@@ -0,0 +1,102 @@
+package io.dataspray.aws.cdk;
+
+import lombok.Builder;
+import lombok.Value;
+
+import javax.annotation.Nullable;
+
+/**
+ * Represents tuning options of the deployment.
+ */
+@Value
+@Builder(toBuilder = true)
+public class DeployConfiguration {
+
+    /**
+     * The maximum number of stacks deployed concurrently within a single environment. A stack is only deployed once
+     * all the stacks it depends on have been deployed.
+     */
+    @Builder.Default
+    int concurrency = 1;
+
+    /**
+     * The maximum number of file assets uploaded concurrently.
+     */
+    @Builder.Default
+    int fileAssetConcurrency = 4;
+
+    /**
+     * The maximum number of Docker image assets built and pushed concurrently. File assets and Docker images are
+     * published independently of each other.
+     */
+    @Builder.Default
+    int imageAssetConcurrency = 1;
+
+    /**
+     * Whether directory assets should be zipped directly into the upload stream. If disabled, the directories are
+     * zipped into temporary files before being uploaded.
+     */
+    @Builder.Default
+    boolean streamDirectoryAssets = false;
+
+    /**
+     * The size of the parts the file assets are uploaded in, at least 5 MB.
+     */
+    @Builder.Default
+    long s3PartSize = 5 * 1024 * 1024;
+
+    /**
+     * The maximum number of concurrent S3 requests per environment. If not specified, it's derived from the target
+     * throughput.
+     */
+    @Nullable
+    Integer s3MaxConcurrency;
+
+    /**
+     * The target throughput of the file asset uploads per environment in gigabits per second. If not specified, the SDK
+     * default is used.
+     */
+    @Nullable
+    Double s3TargetThroughputInGbps;
+
+    /**
+     * Whether a file asset published to several buckets should be uploaded only once. The asset is uploaded to the
+     * bucket in the default region (or the first one) and copied to the other buckets by S3.
+     */
+    @Builder.Default
+    boolean replicateFileAssets = false;
+
+    /**
+     * Whether the stacks whose template, parameters and tags haven't changed since the last deployment should be
+     * skipped without calling CloudFormation. The fingerprint of the deployed stack is stored in an additional output
+     * of its template, so the template is re-serialized on every deployment. The stacks that already have the maximum
+     * of 200 outputs or have SSM parameters are always deployed.
+     */
+    @Builder.Default
+    boolean skipUnchangedStacks = false;
+
+    /**
+     * Whether the code changes of Lambda functions should be deployed by updating the functions directly instead of
+     * updating the stacks. The stacks that have any other changes are deployed through CloudFormation as usual.
+     */
+    @Builder.Default
+    boolean hotswap = false;
+
+    /**
+     * Whether the stacks should be deployed using change sets. The change sets of all the deployed stacks are created
+     * concurrently before any of them is executed, the empty change sets are discarded and the rest are executed in
+     * the order of the stack dependencies.
+     */
+    @Builder.Default
+    boolean changeSets = false;
+
+    /**
+     * The maximum number of change sets created concurrently.
+     */
+    @Builder.Default
+    int changeSetConcurrency = 8;
+
+    public static DeployConfiguration defaults() {
+        return DeployConfiguration.builder().build();
+    }
+}
@@ -1,17 +1,30 @@
 package io.dataspray.aws.cdk;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.dataspray.aws.cdk.process.DefaultProcessRunner;
 import io.dataspray.aws.cdk.process.ProcessRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awscdk.cxapi.CloudAssembly;
 import software.amazon.awscdk.cxapi.CloudFormationStackArtifact;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Deploys the synthesized templates to the AWS.
@@ -22,12 +35,22 @@ public class DeployImpl implements Deploy {
 
     @Override
     public void execute(CloudAssembly cloudAssembly, String toolkitStackName, Set<String> stacks, Map<String, String> parameters, Map<String, String> tags, Set<String> notificationArns, Optional<String> profileOpt, Optional<String> endpointUrlOpt) {
-        execute(CloudDefinition.create(cloudAssembly), toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt);
+        execute(cloudAssembly, toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt, DeployConfiguration.defaults());
+    }
+
+    @Override
+    public void execute(CloudAssembly cloudAssembly, String toolkitStackName, Set<String> stacks, Map<String, String> parameters, Map<String, String> tags, Set<String> notificationArns, Optional<String> profileOpt, Optional<String> endpointUrlOpt, DeployConfiguration configuration) {
+        execute(CloudDefinition.create(cloudAssembly), toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt, configuration);
     }
 
     @Override
     public void execute(Path cloudAssemblyDirectory, String toolkitStackName, Set<String> stacks, Map<String, String> parameters, Map<String, String> tags, Set<String> notificationArns, Optional<String> profileOpt, Optional<String> endpointUrlOpt) {
-        execute(CloudDefinition.create(cloudAssemblyDirectory), toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt);
+        execute(cloudAssemblyDirectory, toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt, DeployConfiguration.defaults());
+    }
+
+    @Override
+    public void execute(Path cloudAssemblyDirectory, String toolkitStackName, Set<String> stacks, Map<String, String> parameters, Map<String, String> tags, Set<String> notificationArns, Optional<String> profileOpt, Optional<String> endpointUrlOpt, DeployConfiguration configuration) {
+        execute(CloudDefinition.create(cloudAssemblyDirectory), toolkitStackName, stacks, parameters, tags, notificationArns, profileOpt, endpointUrlOpt, configuration);
     }
 
     @Override
@@ -47,7 +70,7 @@ public class DeployImpl implements Deploy {
         execute(cloudAssembly, AwsCdk.DEFAULT_TOOLKIT_STACK_NAME, stacks, null, null, ImmutableSet.of(), Optional.of(profile), Optional.empty());
     }
 
-    private void execute(CloudDefinition cloudDefinition, String toolkitStackName, Set<String> stacks, Map<String, String> parameters, Map<String, String> tags, Set<String> notificationArns, Optional<String> profileOpt, Optional<String> endpointUrlOpt) {
+    private void execute(CloudDefinition cloudDefinition, String toolkitStackName, Set<String> stacks, Map<String, String> parameters, Map<String, String> tags, Set<String> notificationArns, Optional<String> profileOpt, Optional<String> endpointUrlOpt, DeployConfiguration configuration) {
         EnvironmentResolver environmentResolver = EnvironmentResolver.create(profileOpt.orElse(null), endpointUrlOpt);
         if (stacks != null && !stacks.isEmpty() && logger.isWarnEnabled()) {
             Set<String> undefinedStacks = new HashSet<>(stacks);
@@ -59,37 +82,147 @@ public class DeployImpl implements Deploy {
         }
 
         ProcessRunner processRunner = new DefaultProcessRunner(cloudDefinition.getCloudAssemblyDirectory().toFile());
-        FileAssetPublisher filePublisher = new FileAssetPublisher();
-        DockerImageAssetPublisher dockerImagePublisher = new DockerImageAssetPublisher(processRunner);
-        AssetDeployer assetDeployer = new AssetDeployer(
-                cloudDefinition.getCloudAssemblyDirectory(),
-                new FileAssetPublisher(),
-                new DockerImageAssetPublisher(processRunner),
-                environmentResolver);
-        assetDeployer.deploy(cloudDefinition.getImageAssets(), cloudDefinition.getFileAssets());
-
-        Map<String, StackDeployer> deployers = new HashMap<>();
-        for (StackDefinition stack : cloudDefinition.getStacks()) {
-            if (stacks == null || stacks.isEmpty() || stacks.contains(stack.getStackName())) {
-                StackDeployer deployer = deployers.computeIfAbsent(stack.getEnvironment(), environment -> {
+        AwsClients awsClients = new AwsClients();
+        // Hashing the templates reads the template files, so it's kept off the common pool
+        ExecutorService hashExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+                .setNameFormat("cdk-template-hash-%d")
+                .setDaemon(true)
+                .build());
+        try (awsClients;
+             DockerImageAssetPublisher dockerImagePublisher = new DockerImageAssetPublisher(processRunner, awsClients);
+             FileAssetPublisher filePublisher = new FileAssetPublisher(configuration);
+             AssetDeployer assetDeployer = new AssetDeployer(
+                     cloudDefinition.getCloudAssemblyDirectory(),
+                     filePublisher,
+                     dockerImagePublisher,
+                     environmentResolver,
+                     awsClients,
+                     configuration.getFileAssetConcurrency(),
+                     configuration.getImageAssetConcurrency(),
+                     configuration.isReplicateFileAssets())) {
+            List<StackDefinition> selectedStacks = cloudDefinition.getStacks().stream()
+                    .filter(stack -> stacks == null || stacks.isEmpty() || stacks.contains(stack.getStackName()))
+                    .collect(Collectors.toList());
+
+            Map<String, StackDeployer> deployers = new HashMap<>();
+            for (StackDefinition stack : selectedStacks) {
+                deployers.computeIfAbsent(stack.getEnvironment(), environment -> {
                     ResolvedEnvironment resolvedEnvironment = environmentResolver.resolve(environment);
                     ToolkitConfiguration toolkitConfiguration = new ToolkitConfiguration(toolkitStackName);
                     return new StackDeployer(cloudDefinition.getCloudAssemblyDirectory(), resolvedEnvironment,
-                            toolkitConfiguration, filePublisher, dockerImagePublisher, notificationArns);
+                            toolkitConfiguration, filePublisher, dockerImagePublisher, awsClients, notificationArns,
+                            configuration, hashExecutor);
                 });
+            }
+            selectedStacks.stream()
+                    .collect(Collectors.groupingBy(StackDefinition::getEnvironment, Collectors.counting()))
+                    .forEach((environment, count) -> {
+                        if (count >= StackSnapshot.LISTING_THRESHOLD) {
+                            awsClients.stacks(deployers.get(environment).getEnvironment()).refresh();
+                        }
+                    });
 
-                Map<String, ParameterValue> assetParameters = assetDeployer.deploy(
-                        stack,
-                        cloudDefinition.getCloudAssemblyDirectory(),
-                        deployer.getEnvironment(),
-                        deployer.getToolkitConfiguration());
+            Map<String, String> stackParameters = parameters != null ? parameters : ImmutableMap.of();
+            Map<String, String> stackTags = tags != null ? tags : ImmutableMap.of();
 
-                if (!stack.getResources().isEmpty()) {
-                    deployer.deploy(stack, assetParameters, parameters != null ? parameters : ImmutableMap.of(), tags != null ? tags : ImmutableMap.of());
-                } else {
-                    deployer.destroy(stack);
+            // The assets are published in the background, each stack only waits for the assets it depends on. The
+            // asset manifests none of the selected stacks depends on are not published at all.
+            Map<String, CompletableFuture<Void>> manifestPublishments = new LinkedHashMap<>();
+            cloudDefinition.getAssetManifests(selectedStacks).forEach((artifactId, assetManifest) ->
+                    manifestPublishments.put(artifactId, assetDeployer.publish(assetManifest)));
+            int skippedManifests = cloudDefinition.getAssetManifests().size() - manifestPublishments.size();
+            if (skippedManifests > 0) {
+                logger.debug("Skipping {} asset manifest(s) not used by the selected stacks", skippedManifests);
+            }
+            Map<String, CompletableFuture<Map<String, ParameterValue>>> stackPublishments = new HashMap<>();
+            for (StackDefinition stack : selectedStacks) {
+                StackDeployer deployer = deployers.get(stack.getEnvironment());
+                stackPublishments.put(stack.getArtifactId(), assetDeployer.publish(stack,
+                        cloudDefinition.getCloudAssemblyDirectory(), deployer.getEnvironment(),
+                        deployer.getToolkitConfiguration()));
+            }
+            Function<StackDefinition, Map<String, ParameterValue>> assetPublisher = stack -> {
+                for (String dependency : stack.getDependencies()) {
+                    CompletableFuture<Void> manifestPublishment = manifestPublishments.get(dependency);
+                    if (manifestPublishment != null) {
+                        AssetDeployer.await(manifestPublishment);
+                    }
+                }
+                return AssetDeployer.await(stackPublishments.get(stack.getArtifactId()));
+            };
+
+            ExecutorService changeSetExecutor = Executors.newFixedThreadPool(configuration.getChangeSetConcurrency(), new ThreadFactoryBuilder()
+                    .setNameFormat("cdk-change-set-%d")
+                    .setDaemon(true)
+                    .build());
+            Map<String, CompletableFuture<Supplier<Stack>>> preparedDeployments = new HashMap<>();
+            AtomicBoolean deploymentFinished = new AtomicBoolean();
+            try {
+                if (configuration.isChangeSets()) {
+                    // Computing a change set takes a while, so the change sets of all the stacks are created up front
+                    for (StackDefinition stack : selectedStacks) {
+                        if (!stack.getResources().isEmpty()) {
+                            preparedDeployments.put(stack.getArtifactId(), CompletableFuture.supplyAsync(() -> {
+                                if (deploymentFinished.get()) {
+                                    throw new CancellationException();
+                                }
+                                return deployers.get(stack.getEnvironment())
+                                        .prepare(stack, assetPublisher.apply(stack), stackParameters, stackTags);
+                            }, changeSetExecutor));
+                        }
+                    }
                 }
+
+                Set<String> selectedArtifactIds = selectedStacks.stream()
+                        .map(StackDefinition::getArtifactId)
+                        .collect(Collectors.toSet());
+                new StackDeploymentScheduler(configuration.getConcurrency()).execute(selectedStacks, stack -> {
+                    StackDeployer deployer = deployers.get(stack.getEnvironment());
+                    CompletableFuture<Supplier<Stack>> preparedDeployment = preparedDeployments.get(stack.getArtifactId());
+                    if (preparedDeployment != null) {
+                        Supplier<Stack> deployment;
+                        try {
+                            deployment = preparedDeployment.join();
+                        } catch (CompletionException e) {
+                            if (stack.getDependencies().stream().noneMatch(selectedArtifactIds::contains)) {
+                                Throwables.throwIfUnchecked(e.getCause());
+                                throw e;
+                            }
+                            // The change set may refer to the resources of the dependencies that didn't exist yet
+                            logger.debug("Unable to create the change set of the '{}' stack before its dependencies " +
+                                    "were deployed, creating it again", stack.getStackName(), e.getCause());
+                            deployment = deployer.prepare(stack, assetPublisher.apply(stack), stackParameters, stackTags);
+                        }
+                        deployment.get();
+                    } else if (!stack.getResources().isEmpty()) {
+                        deployer.deploy(stack, assetPublisher.apply(stack), stackParameters, stackTags);
+                    } else {
+                        assetPublisher.apply(stack);
+                        deployer.destroy(stack);
+                    }
+                });
+            } finally {
+                // The change sets being created are awaited rather than interrupted, so the ones that haven't been
+                // executed can be deleted
+                deploymentFinished.set(true);
+                changeSetExecutor.shutdown();
+                CompletableFuture.allOf(preparedDeployments.values().toArray(new CompletableFuture<?>[0]))
+                        .exceptionally(e -> null)
+                        .join();
+                deployers.values().forEach(StackDeployer::discardChangeSets);
+                // The publishment can't be interrupted, it's awaited before the clients it uses are closed
+                CompletableFuture.allOf(Stream.concat(manifestPublishments.values().stream(), stackPublishments.values().stream())
+                        .toArray(CompletableFuture<?>[]::new))
+                        .exceptionally(e -> null)
+                        .join();
+            }
+
+            if (filePublisher.getSkippedObjects() > 0) {
+                logger.info("Skipped the upload of {} object(s) already present in the bucket, {} bytes avoided",
+                        filePublisher.getSkippedObjects(), filePublisher.getSkippedBytes());
             }
+        } finally {
+            hashExecutor.shutdown();
         }
     }
 }
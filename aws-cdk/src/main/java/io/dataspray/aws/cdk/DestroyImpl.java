@@ -13,6 +13,7 @@ import software.amazon.awssdk.services.cloudformation.model.StackStatus;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class DestroyImpl implements Destroy {
@@ -57,24 +58,33 @@ public class DestroyImpl implements Destroy {
             }
         }
 
-        Map<String, CloudFormationClient> clients = new HashMap<>();
-        IntStream.range(0, cloudDefinition.getStacks().size())
-                .map(i -> cloudDefinition.getStacks().size() - 1 - i)
-                .mapToObj(cloudDefinition.getStacks()::get)
-                .filter(stack -> stacks == null || stacks.isEmpty() || stacks.contains(stack.getStackName()))
-                .forEach(stack -> {
-                    CloudFormationClient client = clients.computeIfAbsent(stack.getEnvironment(), environment -> {
+        try (AwsClients awsClients = new AwsClients()) {
+            List<StackDefinition> selectedStacks = IntStream.range(0, cloudDefinition.getStacks().size())
+                    .map(i -> cloudDefinition.getStacks().size() - 1 - i)
+                    .mapToObj(cloudDefinition.getStacks()::get)
+                    .filter(stack -> stacks == null || stacks.isEmpty() || stacks.contains(stack.getStackName()))
+                    .collect(Collectors.toList());
+
+            Map<String, ResolvedEnvironment> environments = new HashMap<>();
+            selectedStacks.stream()
+                    .collect(Collectors.groupingBy(StackDefinition::getEnvironment, Collectors.counting()))
+                    .forEach((environment, count) -> {
                         ResolvedEnvironment resolvedEnvironment = environmentResolver.resolve(environment);
-                        return CloudFormationClientProvider.get(resolvedEnvironment);
+                        environments.put(environment, resolvedEnvironment);
+                        if (count >= StackSnapshot.LISTING_THRESHOLD) {
+                            awsClients.stacks(resolvedEnvironment).refresh();
+                        }
                     });
 
-                    destroy(client, stack);
-                });
-
+            selectedStacks.forEach(stack -> {
+                ResolvedEnvironment environment = environments.get(stack.getEnvironment());
+                destroy(awsClients.cloudFormation(environment), awsClients.stacks(environment), stack);
+            });
+        }
     }
 
-    private void destroy(CloudFormationClient client, StackDefinition stackDefinition) {
-        Stack stack = Stacks.findStack(client, stackDefinition.getStackName())
+    private void destroy(CloudFormationClient client, StackSnapshot stacks, StackDefinition stackDefinition) {
+        Stack stack = stacks.findStack(stackDefinition.getStackName())
                 .filter(s -> s.stackStatus() != StackStatus.DELETE_COMPLETE)
                 .orElse(null);
         if (stack != null) {
@@ -86,6 +96,7 @@ public class DestroyImpl implements Destroy {
             } else {
                 stack = Stacks.awaitCompletion(client, stack);
             }
+            stacks.update(stack);
             if (stack.stackStatus() != StackStatus.DELETE_COMPLETE) {
                 throw new CdkException("The deletion of '" + stack.stackName() + "' has failed.");
             }
@@ -1,25 +1,48 @@
 package io.dataspray.aws.cdk;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.dataspray.aws.cdk.process.ProcessExecutionException;
 import io.dataspray.aws.cdk.process.ProcessRunner;
+import lombok.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.ecr.EcrClient;
 import software.amazon.awssdk.services.ecr.model.*;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
-public class DockerImageAssetPublisher {
+public class DockerImageAssetPublisher implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(DockerImageAssetPublisher.class);
 
     private final ProcessRunner processRunner;
+    private final AwsClients awsClients;
+    private final ConcurrentMap<String, CompletableFuture<Void>> builds = new ConcurrentHashMap<>();
+    private final ExecutorService pushExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("cdk-image-push-%d")
+            .setDaemon(true)
+            .build());
 
-    private EcrClient ecrClient;
-
-    public DockerImageAssetPublisher(ProcessRunner processRunner) {
+    public DockerImageAssetPublisher(ProcessRunner processRunner, AwsClients awsClients) {
         this.processRunner = processRunner;
+        this.awsClients = awsClients;
+    }
+
+    /**
+     * Shuts down the threads pushing the images. The pushes in progress are allowed to finish.
+     */
+    @Override
+    public void close() {
+        pushExecutor.shutdown();
     }
 
     /**
@@ -31,37 +54,112 @@ public class DockerImageAssetPublisher {
      * @param environment resolved environment
      */
     public void publish(String repositoryName, String tag, ImageBuild imageBuild, ResolvedEnvironment environment) {
-        ImageDetail image = findImage(repositoryName, tag, environment).orElse(null);
-        if (image == null) {
-            ensureDockerInstalled();
+        publish(imageBuild, ImmutableList.of(new Destination(repositoryName, tag, environment)));
+    }
+
+    /**
+     * Builds the image once and publishes it to all the given destinations that don't contain it yet. The image is
+     * pushed to the destinations concurrently.
+     *
+     * @param imageBuild build definition
+     * @param destinations the destinations to publish the image to
+     */
+    public void publish(ImageBuild imageBuild, List<Destination> destinations) {
+        List<Destination> missingDestinations = new ArrayList<>();
+        for (Destination destination : destinations) {
+            if (!findImage(destination.getRepositoryName(), destination.getTag(), destination.getEnvironment()).isPresent()) {
+                missingDestinations.add(destination);
+            }
+        }
+        if (missingDestinations.isEmpty()) {
+            return;
+        }
 
-            AuthorizationData authorizationData = getAuthorizationData(environment)
+        ensureDockerInstalled();
+        Set<String> registries = new HashSet<>();
+        for (Destination destination : missingDestinations) {
+            AuthorizationData authorizationData = getAuthorizationData(destination.getEnvironment())
                     .orElseThrow(() -> new CdkException("Unable to retrieve authorization token from ECR"));
-            try {
-                processRunner.run(toDockerLoginCommand(authorizationData));
-            } catch (ProcessExecutionException e) {
-                throw new CdkException("Unable to add ECR authorization data");
+            if (registries.add(authorizationData.proxyEndpoint())) {
+                try {
+                    processRunner.run(toDockerLoginCommand(authorizationData));
+                } catch (ProcessExecutionException e) {
+                    throw new CdkException("Unable to add ECR authorization data");
+                }
             }
+        }
+
+        build(imageBuild);
 
-            logger.info("Building docker image before publishing it to the ECR, dockerFile={}", imageBuild.getDockerfile());
+        if (missingDestinations.size() == 1) {
+            push(imageBuild, missingDestinations.get(0));
+            return;
+        }
+
+        List<CompletableFuture<Void>> pushes = missingDestinations.stream()
+                .map(destination -> CompletableFuture.runAsync(() -> push(imageBuild, destination), pushExecutor))
+                .collect(Collectors.toList());
+        RuntimeException failure = null;
+        for (CompletableFuture<Void> push : pushes) {
             try {
-                processRunner.run(toBuildCommand(imageBuild));
-            } catch (ProcessExecutionException e) {
-                throw new CdkException("Failed to build the docker image from " + imageBuild.getDockerfile() +
-                        ". Please make sure that the Docker daemon is running");
+                push.join();
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
             }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void push(ImageBuild imageBuild, Destination destination) {
+        Repository repository = findRepository(destination.getRepositoryName(), destination.getEnvironment())
+                .orElseGet(() -> createRepository(destination.getRepositoryName(), destination.getEnvironment()));
+        String imageUri = String.join(":", repository.repositoryUri(), destination.getTag());
+        processRunner.run(ImmutableList.of("docker", "tag", imageBuild.getImageTag(), imageUri));
 
-            Repository repository = findRepository(repositoryName, environment)
-                    .orElseGet(() -> createRepository(repositoryName, environment));
-            String imageUri = String.join(":", repository.repositoryUri(), tag);
-            processRunner.run(ImmutableList.of("docker", "tag", imageBuild.getImageTag(), imageUri));
+        logger.info("Publishing docker image, imageUri={}", imageUri);
+        try {
+            processRunner.run(ImmutableList.of("docker", "push", imageUri));
+        } catch (ProcessExecutionException e) {
+            throw new CdkException("Unable to push the image " + imageUri + " to the ECR repository", e);
+        }
+    }
 
-            logger.info("Publishing docker image, imageUri={}", imageUri);
+    /**
+     * Builds the image unless it has already been built by this publisher. An image published to several destinations
+     * is built only once, the concurrent publishments of the same image wait for its build to complete.
+     */
+    private void build(ImageBuild imageBuild) {
+        CompletableFuture<Void> build = new CompletableFuture<>();
+        CompletableFuture<Void> existingBuild = builds.putIfAbsent(imageBuild.getImageTag(), build);
+        if (existingBuild != null) {
             try {
-                processRunner.run(ImmutableList.of("docker", "push", imageUri));
-            } catch (ProcessExecutionException e) {
-                throw new CdkException("Unable to push the image " + imageUri + " to the ECR repository", e);
+                existingBuild.join();
+            } catch (CompletionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
             }
+            return;
+        }
+
+        logger.info("Building docker image before publishing it to the ECR, dockerFile={}", imageBuild.getDockerfile());
+        try {
+            processRunner.run(toBuildCommand(imageBuild));
+            build.complete(null);
+        } catch (ProcessExecutionException e) {
+            CdkException exception = new CdkException("Failed to build the docker image from " + imageBuild.getDockerfile() +
+                    ". Please make sure that the Docker daemon is running");
+            build.completeExceptionally(exception);
+            throw exception;
+        } catch (RuntimeException e) {
+            build.completeExceptionally(e);
+            throw e;
         }
     }
 
@@ -96,15 +194,7 @@ public class DockerImageAssetPublisher {
     }
 
     private EcrClient getEcrClient(ResolvedEnvironment environment) {
-        if (this.ecrClient == null) {
-            this.ecrClient = EcrClient.builder()
-                    .region(environment.getRegion())
-                    .credentialsProvider(environment.getCredentialsProvider())
-                    .endpointOverride(environment.getEndpointUriOpt().orElse(null))
-                    .build();
-        }
-
-        return ecrClient;
+        return awsClients.ecr(environment);
     }
 
     private List<String> toDockerLoginCommand(AuthorizationData authorizationData) {
@@ -156,4 +246,15 @@ public class DockerImageAssetPublisher {
         return getEcrClient(environment).getAuthorizationToken().authorizationData().stream().findFirst();
     }
 
+    /**
+     * Represents an ECR repository the image is published to.
+     */
+    @Value
+    public static class Destination {
+
+        String repositoryName;
+        String tag;
+        ResolvedEnvironment environment;
+    }
+
 }
@@ -1,35 +1,77 @@
 package io.dataspray.aws.cdk;
 
+import lombok.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.zip.ZipUtil;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.BlockingOutputStreamAsyncRequestBody;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedCopy;
 import software.amazon.awssdk.transfer.s3.model.CompletedUpload;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
 import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+import software.amazon.awssdk.utils.CancellableOutputStream;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
- * Publishes file assets to S3.
+ * Publishes file assets to S3. A separate S3 client and transfer manager is created for each account, region and
+ * endpoint, so the assets are always uploaded using a client of the bucket's region. The clients are released once the
+ * publisher is closed.
  */
-public class FileAssetPublisher {
+public class FileAssetPublisher implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(FileAssetPublisher.class);
     private static final int MINIMUM_PART_SIZE = 5 * 1024 * 1024;
 
-    private S3AsyncClient s3Client;
-    private S3TransferManager s3TransferManager;
+    private final AtomicInteger skippedObjects = new AtomicInteger();
+    private final AtomicLong skippedBytes = new AtomicLong();
+    private final ConcurrentMap<String, TransferClients> clients = new ConcurrentHashMap<>();
+    private final boolean streamDirectories;
+    private final Function<ResolvedEnvironment, TransferClients> clientsFactory;
+
+    public FileAssetPublisher() {
+        this(DeployConfiguration.defaults());
+    }
+
+    public FileAssetPublisher(DeployConfiguration configuration) {
+        this(configuration, environment -> createClients(environment, configuration));
+    }
+
+    FileAssetPublisher(DeployConfiguration configuration, Function<ResolvedEnvironment, TransferClients> clientsFactory) {
+        if (configuration.getS3PartSize() < MINIMUM_PART_SIZE) {
+            throw new IllegalArgumentException("The minimum part size is 5 MB (" + MINIMUM_PART_SIZE + " bytes)");
+        }
+        this.streamDirectories = configuration.isStreamDirectoryAssets();
+        this.clientsFactory = clientsFactory;
+    }
 
     /**
-     * Uploads a file or a directory (zipping it before uploading) to S3 bucket.
+     * Uploads a file or a directory (zipping it before uploading) to S3 bucket. The names of the file assets are
+     * derived from the hash of their content, so the upload is skipped if the object already exists in the bucket.
      *
      * @param file       the file or directory to be uploaded
      * @param objectName the name of the object in the bucket
@@ -37,16 +79,63 @@ public class FileAssetPublisher {
      * @throws IOException if I/O error occurs while uploading a file or directory
      */
     public void publish(Path file, String objectName, String bucketName, ResolvedEnvironment environment) throws IOException {
-        logger.info("Publishing s3://{}/{}", bucketName, objectName);
-        if (Files.isDirectory(file)) {
-            publishDirectory(file, objectName, bucketName, environment);
-        } else {
-            publishFile(file, objectName, bucketName, environment);
+        if (isPublished(bucketName, objectName, environment)) {
+            return;
+        }
+
+        publishContent(file, objectName, bucketName, environment);
+    }
+
+    /**
+     * Publishes a file or a directory to several buckets uploading it only once. The content is uploaded to the first
+     * bucket that doesn't contain it yet, unless one of the buckets already contains it, and S3 copies it to the other
+     * buckets on the server side (in parts if it's large). If a copy fails, for example because the destination
+     * account can't read the source bucket, the content is uploaded to that bucket instead.
+     *
+     * @param file         the file or directory to be uploaded
+     * @param destinations the buckets to publish the file to, the first one should be the closest to this machine
+     * @throws IOException if I/O error occurs while uploading a file or directory
+     */
+    public void publish(Path file, List<Destination> destinations) throws IOException {
+        Destination source = null;
+        List<Destination> missingDestinations = new ArrayList<>();
+        for (Destination destination : destinations) {
+            if (isPublished(destination.getBucketName(), destination.getObjectName(), destination.getEnvironment())) {
+                source = source != null ? source : destination;
+            } else {
+                missingDestinations.add(destination);
+            }
+        }
+        if (missingDestinations.isEmpty()) {
+            return;
+        }
+        if (source == null) {
+            source = missingDestinations.remove(0);
+            publishContent(file, source.getObjectName(), source.getBucketName(), source.getEnvironment());
+        }
+
+        List<CompletableFuture<CompletedCopy>> copies = new ArrayList<>();
+        for (Destination destination : missingDestinations) {
+            logger.info("Copying s3://{}/{} to s3://{}/{}", source.getBucketName(), source.getObjectName(),
+                    destination.getBucketName(), destination.getObjectName());
+            copies.add(copy(source, destination));
+        }
+        for (int i = 0; i < missingDestinations.size(); i++) {
+            Destination destination = missingDestinations.get(i);
+            try {
+                copies.get(i).join();
+            } catch (CompletionException e) {
+                logger.info("Unable to copy s3://{}/{} to s3://{}/{}, uploading it instead", source.getBucketName(),
+                        source.getObjectName(), destination.getBucketName(), destination.getObjectName());
+                logger.debug("The copy failed", e.getCause());
+                publishContent(file, destination.getObjectName(), destination.getBucketName(), destination.getEnvironment());
+            }
         }
     }
 
     /**
-     * Uploads a string as a file (zipping it before uploading) to S3 bucket.
+     * Uploads a string as a file to S3 bucket. The name of the object must be derived from the hash of the content, the
+     * upload is skipped if the object already exists in the bucket.
      *
      * @param data       the content of the file
      * @param objectName the name of the object in the bucket
@@ -54,18 +143,74 @@ public class FileAssetPublisher {
      * @throws IOException if I/O error occurs while uploading a file or directory
      */
     public void publish(byte[] data, String objectName, String bucketName, ResolvedEnvironment environment) throws IOException {
+        if (isPublished(bucketName, objectName, environment)) {
+            return;
+        }
+
         logger.info("Publishing inline content asset, bucketName={}, objectName={}", bucketName, objectName);
         publishFile(data, objectName, bucketName, environment);
     }
 
+    /**
+     * Uploads a file or a directory to S3 bucket without checking whether the object already exists.
+     */
+    private void publishContent(Path file, String objectName, String bucketName, ResolvedEnvironment environment) throws IOException {
+        logger.info("Publishing s3://{}/{}", bucketName, objectName);
+        if (Files.isDirectory(file)) {
+            publishDirectory(file, objectName, bucketName, environment);
+        } else {
+            publishFile(file, objectName, bucketName, environment);
+        }
+    }
+
     /**
      * Zips the directory and uploads it to S3 bucket.
      */
     private void publishDirectory(Path directory, String objectName, String bucketName, ResolvedEnvironment environment) throws IOException {
-        Path tempDir = Files.createTempDirectory("aws-cdk-4j-" + objectName);
-        File packedFile = tempDir.resolve(objectName).toFile();
-        ZipUtil.pack(directory.toFile(), packedFile);
-        publishFile(packedFile, objectName, bucketName, environment);
+        if (streamDirectories) {
+            streamDirectory(directory, objectName, bucketName, environment);
+        } else {
+            Path tempDir = Files.createTempDirectory("aws-cdk-4j-" + objectName);
+            try {
+                File packedFile = tempDir.resolve(objectName).toFile();
+                ZipUtil.pack(directory.toFile(), packedFile);
+                publishFile(packedFile, objectName, bucketName, environment);
+            } finally {
+                deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    /**
+     * Zips the directory straight into a multipart upload of an unknown length, so the compression and the upload
+     * overlap and no temporary files are created.
+     */
+    private void streamDirectory(Path directory, String objectName, String bucketName, ResolvedEnvironment environment) throws IOException {
+        BlockingOutputStreamAsyncRequestBody body = AsyncRequestBody.forBlockingOutputStream(null);
+        CompletableFuture<CompletedUpload> upload = upload(environment, body, bucketName, objectName);
+        CancellableOutputStream outputStream = body.outputStream();
+        try {
+            ZipUtil.pack(directory.toFile(), outputStream);
+            outputStream.close();
+        } catch (IOException | RuntimeException e) {
+            outputStream.cancel();
+            if (upload.isCompletedExceptionally()) {
+                // The upload failure is the reason why the stream has been closed
+                upload.join();
+            }
+            throw e;
+        }
+        upload.join();
+    }
+
+    private void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (IOException e) {
+            logger.debug("Unable to delete the temporary directory {}", directory, e);
+        }
     }
 
     /**
@@ -89,41 +234,103 @@ public class FileAssetPublisher {
         upload(environment, AsyncRequestBody.fromFile(file), bucketName, objectName).join();
     }
 
-    private S3AsyncClient getS3Client(ResolvedEnvironment environment) {
-        if (this.s3Client == null) {
-            this.s3Client = S3AsyncClient.crtBuilder()
-                    .region(environment.getRegion())
-                    .credentialsProvider(environment.getCredentialsProvider())
-                    .endpointOverride(environment.getEndpointUriOpt().orElse(null))
-                    .minimumPartSizeInBytes((long) MINIMUM_PART_SIZE)
-                    .build();
+    /**
+     * Returns the number of objects (file assets and large templates) that haven't been uploaded as they were already
+     * present in the bucket.
+     */
+    public int getSkippedObjects() {
+        return skippedObjects.get();
+    }
+
+    /**
+     * Returns the total size of the objects (file assets and large templates) that haven't been uploaded as they were
+     * already present in the bucket.
+     */
+    public long getSkippedBytes() {
+        return skippedBytes.get();
+    }
+
+    private boolean isPublished(String bucketName, String objectName, ResolvedEnvironment environment) {
+        Optional<Long> existingObjectSize = findObjectSize(bucketName, objectName, environment);
+        if (existingObjectSize.isPresent()) {
+            logger.info("s3://{}/{} already exists ({} bytes), skipping the upload", bucketName, objectName, existingObjectSize.get());
+            skippedObjects.incrementAndGet();
+            skippedBytes.addAndGet(existingObjectSize.get());
+            return true;
         }
+        return false;
+    }
 
-        return s3Client;
+    /**
+     * Returns the size of the object if it exists in the bucket. A missing object is reported by S3 as either 404 or
+     * 403 (if the caller is not allowed to list the bucket), both cases are treated as the object being absent. Any
+     * other error is ignored as well and the object is uploaded as usual.
+     */
+    private Optional<Long> findObjectSize(String bucketName, String objectName, ResolvedEnvironment environment) {
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(objectName)
+                .build();
+        try {
+            HeadObjectResponse response = getS3Client(environment).headObject(request).join();
+            return Optional.ofNullable(response.contentLength());
+        } catch (CompletionException e) {
+            if (!(e.getCause() instanceof S3Exception) || !isNotFound((S3Exception) e.getCause())) {
+                logger.debug("Unable to check whether s3://{}/{} exists", bucketName, objectName, e.getCause());
+            }
+            return Optional.empty();
+        }
+    }
+
+    private boolean isNotFound(S3Exception e) {
+        return e.statusCode() == 404 || e.statusCode() == 403;
+    }
+
+    private S3AsyncClient getS3Client(ResolvedEnvironment environment) {
+        return getClients(environment).getS3Client();
     }
 
     private S3TransferManager getS3TransferManager(ResolvedEnvironment environment) {
-        if (this.s3TransferManager == null) {
-            this.s3TransferManager = S3TransferManager.builder()
-                    .s3Client(getS3Client(environment))
-                    .build();
-        }
+        return getClients(environment).getS3TransferManager();
+    }
+
+    private TransferClients getClients(ResolvedEnvironment environment) {
+        return clients.computeIfAbsent(environment.getClientKey(), key -> clientsFactory.apply(environment));
+    }
+
+    private static TransferClients createClients(ResolvedEnvironment environment, DeployConfiguration configuration) {
+        S3AsyncClient s3Client = S3AsyncClient.crtBuilder()
+                .region(environment.getRegion())
+                .credentialsProvider(environment.getCredentialsProvider())
+                .endpointOverride(environment.getEndpointUriOpt().orElse(null))
+                .minimumPartSizeInBytes(configuration.getS3PartSize())
+                .maxConcurrency(configuration.getS3MaxConcurrency())
+                .targetThroughputInGbps(configuration.getS3TargetThroughputInGbps())
+                .build();
+        S3TransferManager s3TransferManager = S3TransferManager.builder()
+                .s3Client(s3Client)
+                .build();
+        return new TransferClients(s3Client, s3TransferManager);
+    }
 
-        return s3TransferManager;
+    @Override
+    public void close() {
+        clients.values().forEach(transferClients -> {
+            transferClients.getS3TransferManager().close();
+            transferClients.getS3Client().close();
+        });
+        clients.clear();
     }
 
     private CompletableFuture<CompletedUpload> upload(ResolvedEnvironment environment, AsyncRequestBody body, String bucketName, String objectKey) {
         return upload(environment, body, bucketName, objectKey, null);
     }
 
+    /**
+     * Uploads the content using the transfer manager of the environment. The content is uploaded in parts of the
+     * configured size, which is set on the S3 client of the environment.
+     */
     private CompletableFuture<CompletedUpload> upload(ResolvedEnvironment environment, AsyncRequestBody body, String bucketName, String objectKey, @Nullable String contentType) {
-        return upload(environment, body, bucketName, objectKey, contentType, MINIMUM_PART_SIZE);
-    }
-
-    private CompletableFuture<CompletedUpload> upload(ResolvedEnvironment environment, AsyncRequestBody body, String bucketName, String objectKey, @Nullable String contentType, int partSize) {
-        if (partSize <= 0) {
-            throw new IllegalArgumentException("The minimum part size is 5 MB (" + MINIMUM_PART_SIZE + " bytes)");
-        }
         return getS3TransferManager(environment).upload(UploadRequest.builder()
                         .putObjectRequest(PutObjectRequest.builder()
                                 .bucket(bucketName)
@@ -134,4 +341,36 @@ public class FileAssetPublisher {
                         .build())
                 .completionFuture();
     }
+
+    private CompletableFuture<CompletedCopy> copy(Destination source, Destination destination) {
+        try {
+            return getS3TransferManager(destination.getEnvironment()).copy(CopyRequest.builder()
+                            .copyObjectRequest(CopyObjectRequest.builder()
+                                    .sourceBucket(source.getBucketName())
+                                    .sourceKey(source.getObjectName())
+                                    .destinationBucket(destination.getBucketName())
+                                    .destinationKey(destination.getObjectName())
+                                    .build())
+                            .build())
+                    .completionFuture();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Represents a bucket a file asset is published to.
+     */
+    @Value
+    public static class Destination {
+        String bucketName;
+        String objectName;
+        ResolvedEnvironment environment;
+    }
+
+    @Value
+    static class TransferClients {
+        S3AsyncClient s3Client;
+        S3TransferManager s3TransferManager;
+    }
 }
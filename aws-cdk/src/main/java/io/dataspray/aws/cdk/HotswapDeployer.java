@@ -0,0 +1,418 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackResourceRequest;
+import software.amazon.awssdk.services.cloudformation.model.GetTemplateRequest;
+import software.amazon.awssdk.services.cloudformation.model.Parameter;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.Tag;
+import software.amazon.awssdk.services.cloudformation.model.TemplateStage;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.GetFunctionRequest;
+import software.amazon.awssdk.services.lambda.model.UpdateFunctionCodeRequest;
+import software.amazon.awssdk.services.lambda.waiters.LambdaWaiter;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Deploys the code changes of Lambda functions directly, bypassing CloudFormation. A stack is hotswapped only if the
+ * {@code Code} properties of its {@code AWS::Lambda::Function} resources and the values of the asset parameters they
+ * reference are the only differences from the deployed stack. The hotswapped stack drifts from its template until it's
+ * deployed through CloudFormation again.
+ */
+class HotswapDeployer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotswapDeployer.class);
+
+    private static final String FUNCTION_TYPE = "AWS::Lambda::Function";
+    private static final Pattern SUBSTITUTION = Pattern.compile("\\$\\{([^}]+)}");
+
+    private final ResolvedEnvironment environment;
+    private final CloudFormationClient client;
+    private final LambdaClient lambda;
+
+    HotswapDeployer(ResolvedEnvironment environment, CloudFormationClient client, LambdaClient lambda) {
+        this.environment = environment;
+        this.client = client;
+        this.lambda = lambda;
+    }
+
+    /**
+     * Prepares the update of the code of the changed Lambda functions of the deployed stack. Returns the action
+     * updating the functions or {@code null} if the stack has other changes and has to be deployed through
+     * CloudFormation.
+     *
+     * @param stackDefinition  the stack to be deployed
+     * @param deployedStack    the current state of the stack
+     * @param parameters       the parameters of the stack
+     * @param assetParameters  the names of the parameters referring to the assets
+     * @param tags             the tags of the stack
+     */
+    @Nullable
+    Runnable prepare(StackDefinition stackDefinition, Stack deployedStack, Map<String, ParameterValue> parameters,
+                     Set<String> assetParameters, Map<String, String> tags) {
+        String stackName = stackDefinition.getStackName();
+        Map<String, String> deployedTags = deployedStack.tags().stream()
+                .collect(Collectors.toMap(Tag::key, Tag::value));
+        if (!deployedTags.equals(tags)) {
+            logger.info("The tags of the '{}' stack have changed, the stack can't be hotswapped", stackName);
+            return null;
+        }
+
+        Map<String, String> parameterValues = new HashMap<>();
+        Map<String, String> deployedParameterValues = new HashMap<>();
+        for (Parameter parameter : deployedStack.parameters()) {
+            deployedParameterValues.put(parameter.parameterKey(), parameter.parameterValue());
+            parameterValues.put(parameter.parameterKey(), Optional.ofNullable(parameter.resolvedValue()).orElse(parameter.parameterValue()));
+        }
+        Set<String> changedParameters = new HashSet<>();
+        parameters.forEach((name, value) -> {
+            if (value.isUpdated() && !value.get().equals(deployedParameterValues.get(name))) {
+                changedParameters.add(name);
+                parameterValues.put(name, value.get());
+            }
+        });
+        if (!assetParameters.containsAll(changedParameters)) {
+            logger.info("The parameters of the '{}' stack have changed, the stack can't be hotswapped", stackName);
+            return null;
+        }
+
+        Map<String, Object> deployedTemplate = getDeployedTemplate(deployedStack);
+        if (deployedTemplate == null) {
+            return null;
+        }
+
+        Map<String, Map<String, Object>> changedFunctions = findChangedFunctions(deployedTemplate, stackDefinition.getTemplate(), changedParameters);
+        if (changedFunctions == null) {
+            logger.info("The '{}' stack has changes other than the code of the Lambda functions, the stack can't be " +
+                    "hotswapped", stackName);
+            return null;
+        }
+        if (changedFunctions.isEmpty()) {
+            return null;
+        }
+
+        List<UpdateFunctionCodeRequest> requests = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> function : changedFunctions.entrySet()) {
+            UpdateFunctionCodeRequest.Builder request = toRequest(function.getValue(), parameterValues);
+            if (request == null) {
+                logger.info("The code of the '{}' function of the '{}' stack can't be resolved, the stack can't be " +
+                        "hotswapped", function.getKey(), stackName);
+                return null;
+            }
+            requests.add(request.functionName(getPhysicalId(deployedStack, function.getKey())).build());
+        }
+
+        return () -> hotswap(stackName, requests);
+    }
+
+    private void hotswap(String stackName, List<UpdateFunctionCodeRequest> requests) {
+        logger.warn("Hotswapping the code of {} Lambda function(s) of the '{}' stack. The stack will drift from its " +
+                "template until it's deployed without hotswap", requests.size(), stackName);
+        try (LambdaWaiter waiter = lambda.waiter()) {
+            for (UpdateFunctionCodeRequest request : requests) {
+                logger.info("Updating the code of the '{}' function", request.functionName());
+                lambda.updateFunctionCode(request);
+            }
+            for (UpdateFunctionCodeRequest request : requests) {
+                waiter.waitUntilFunctionUpdatedV2(GetFunctionRequest.builder()
+                        .functionName(request.functionName())
+                        .build());
+            }
+        } catch (SdkException e) {
+            throw StackDeploymentException.builder(stackName, environment)
+                    .withCause("Unable to hotswap the code of the Lambda functions")
+                    .withCause(e)
+                    .build();
+        }
+        logger.info("The code of the Lambda functions of the '{}' stack has been successfully hotswapped", stackName);
+    }
+
+    @Nullable
+    private Map<String, Object> getDeployedTemplate(Stack deployedStack) {
+        String templateBody = client.getTemplate(GetTemplateRequest.builder()
+                .stackName(deployedStack.stackId())
+                .templateStage(TemplateStage.ORIGINAL)
+                .build()).templateBody();
+        Map<String, Object> template;
+        try {
+            template = CloudAssemblyReader.parseTemplate(templateBody);
+        } catch (CdkException e) {
+            logger.debug("Unable to parse the deployed template of the '{}' stack", deployedStack.stackName(), e);
+            return null;
+        }
+
+        // The fingerprint output is injected during the deployment, so it's not a part of the synthesized template
+        Map<String, Object> outputs = asMap(template.get("Outputs"));
+        if (outputs.containsKey(StackDeployer.FINGERPRINT_OUTPUT)) {
+            outputs = new LinkedHashMap<>(outputs);
+            outputs.remove(StackDeployer.FINGERPRINT_OUTPUT);
+            template = new LinkedHashMap<>(template);
+            if (outputs.isEmpty()) {
+                template.remove("Outputs");
+            } else {
+                template.put("Outputs", outputs);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Returns the code of the functions that have changed by logical ids or {@code null} if anything else has changed.
+     * The resource metadata is ignored, the CDK updates it along with the code of the assets.
+     */
+    @Nullable
+    private Map<String, Map<String, Object>> findChangedFunctions(Map<String, Object> deployedTemplate, Map<String, Object> template, Set<String> changedParameters) {
+        for (String section : Sets.union(deployedTemplate.keySet(), template.keySet())) {
+            if (!section.equals("Resources") &&
+                    (!Objects.equals(deployedTemplate.get(section), template.get(section)) || references(template.get(section), changedParameters))) {
+                return null;
+            }
+        }
+
+        Map<String, Object> deployedResources = asMap(deployedTemplate.get("Resources"));
+        Map<String, Object> resources = asMap(template.get("Resources"));
+        if (!deployedResources.keySet().equals(resources.keySet())) {
+            return null;
+        }
+
+        Map<String, Map<String, Object>> changedFunctions = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : resources.entrySet()) {
+            Map<String, Object> resource = asMap(entry.getValue());
+            Map<String, Object> deployedResource = asMap(deployedResources.get(entry.getKey()));
+            boolean function = FUNCTION_TYPE.equals(resource.get("Type"));
+            Map<String, Object> definition = withoutCode(resource, function);
+            if (!definition.equals(withoutCode(deployedResource, function)) || references(definition, changedParameters)) {
+                return null;
+            }
+
+            if (function) {
+                Object code = asMap(resource.get("Properties")).get("Code");
+                Object deployedCode = asMap(deployedResource.get("Properties")).get("Code");
+                if (!Objects.equals(code, deployedCode) || references(code, changedParameters)) {
+                    changedFunctions.put(entry.getKey(), asMap(code));
+                }
+            }
+        }
+        return changedFunctions;
+    }
+
+    private Map<String, Object> withoutCode(Map<String, Object> resource, boolean function) {
+        Map<String, Object> result = new LinkedHashMap<>(resource);
+        result.remove("Metadata");
+        if (function) {
+            Map<String, Object> properties = new LinkedHashMap<>(asMap(resource.get("Properties")));
+            properties.remove("Code");
+            result.put("Properties", properties);
+        }
+        return result;
+    }
+
+    @Nullable
+    private UpdateFunctionCodeRequest.Builder toRequest(Map<String, Object> code, Map<String, String> parameters) {
+        if (code.containsKey("ZipFile")) {
+            return null;
+        }
+        if (code.containsKey("ImageUri")) {
+            String imageUri = evaluateString(code.get("ImageUri"), parameters);
+            return imageUri != null ? UpdateFunctionCodeRequest.builder().imageUri(imageUri) : null;
+        }
+
+        String bucket = evaluateString(code.get("S3Bucket"), parameters);
+        String key = evaluateString(code.get("S3Key"), parameters);
+        String version = code.containsKey("S3ObjectVersion") ? evaluateString(code.get("S3ObjectVersion"), parameters) : null;
+        if (bucket == null || key == null || code.containsKey("S3ObjectVersion") && version == null) {
+            return null;
+        }
+        return UpdateFunctionCodeRequest.builder()
+                .s3Bucket(bucket)
+                .s3Key(key)
+                .s3ObjectVersion(version);
+    }
+
+    private String getPhysicalId(Stack deployedStack, String logicalId) {
+        return client.describeStackResource(DescribeStackResourceRequest.builder()
+                .stackName(deployedStack.stackId())
+                .logicalResourceId(logicalId)
+                .build()).stackResourceDetail().physicalResourceId();
+    }
+
+    /**
+     * Checks whether the value references any of the given parameters.
+     */
+    private boolean references(@Nullable Object value, Set<String> parameters) {
+        if (parameters.isEmpty()) {
+            return false;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getKey().equals("Ref") && parameters.contains(entry.getValue())) {
+                    return true;
+                }
+                Object substitution = entry.getValue() instanceof List && !((List<?>) entry.getValue()).isEmpty()
+                        ? ((List<?>) entry.getValue()).get(0)
+                        : entry.getValue();
+                if (entry.getKey().equals("Fn::Sub") && substitution instanceof String && references((String) substitution, parameters)) {
+                    return true;
+                }
+                if (references(entry.getValue(), parameters)) {
+                    return true;
+                }
+            }
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (references(element, parameters)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean references(String substitution, Set<String> parameters) {
+        Matcher matcher = SUBSTITUTION.matcher(substitution);
+        while (matcher.find()) {
+            if (parameters.contains(matcher.group(1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private String evaluateString(@Nullable Object value, Map<String, String> parameters) {
+        Object result = evaluate(value, parameters);
+        return result instanceof String ? (String) result : null;
+    }
+
+    /**
+     * Evaluates the intrinsic functions that are used by the CDK to refer to the code of the functions. Returns
+     * {@code null} if the value can't be resolved.
+     */
+    @Nullable
+    private Object evaluate(@Nullable Object value, Map<String, String> parameters) {
+        if (value instanceof String) {
+            return value;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof List) {
+            List<Object> result = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                Object evaluated = evaluate(element, parameters);
+                if (evaluated == null) {
+                    return null;
+                }
+                result.add(evaluated);
+            }
+            return result;
+        }
+
+        Map<String, Object> function = asMap(value);
+        if (function.size() != 1) {
+            return null;
+        }
+        Map.Entry<String, Object> entry = function.entrySet().iterator().next();
+        switch (entry.getKey()) {
+            case "Ref":
+                return entry.getValue() instanceof String ? resolveReference((String) entry.getValue(), parameters) : null;
+            case "Fn::Sub":
+                return entry.getValue() instanceof String ? substitute((String) entry.getValue(), parameters) : null;
+            case "Fn::Join": {
+                List<?> arguments = asList(evaluate(entry.getValue(), parameters));
+                if (arguments.size() != 2 || !(arguments.get(0) instanceof String) || !(arguments.get(1) instanceof List)) {
+                    return null;
+                }
+                List<?> elements = (List<?>) arguments.get(1);
+                if (!elements.stream().allMatch(String.class::isInstance)) {
+                    return null;
+                }
+                return elements.stream().map(String.class::cast).collect(Collectors.joining((String) arguments.get(0)));
+            }
+            case "Fn::Select": {
+                List<?> arguments = asList(evaluate(entry.getValue(), parameters));
+                if (arguments.size() != 2 || !(arguments.get(0) instanceof String) || !(arguments.get(1) instanceof List)) {
+                    return null;
+                }
+                List<?> elements = (List<?>) arguments.get(1);
+                try {
+                    int index = Integer.parseInt((String) arguments.get(0));
+                    return index >= 0 && index < elements.size() ? elements.get(index) : null;
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            case "Fn::Split": {
+                List<?> arguments = asList(evaluate(entry.getValue(), parameters));
+                if (arguments.size() != 2 || !(arguments.get(0) instanceof String) || !(arguments.get(1) instanceof String)) {
+                    return null;
+                }
+                return ImmutableList.copyOf(((String) arguments.get(1)).split(Pattern.quote((String) arguments.get(0)), -1));
+            }
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private String substitute(String template, Map<String, String> parameters) {
+        Matcher matcher = SUBSTITUTION.matcher(template);
+        StringBuilder result = new StringBuilder();
+        int position = 0;
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String replacement = name.startsWith("!") ? "${" + name.substring(1) + "}" : resolveReference(name, parameters);
+            if (replacement == null) {
+                return null;
+            }
+            result.append(template, position, matcher.start()).append(replacement);
+            position = matcher.end();
+        }
+        return result.append(template.substring(position)).toString();
+    }
+
+    @Nullable
+    private String resolveReference(String name, Map<String, String> parameters) {
+        switch (name) {
+            case "AWS::AccountId":
+                return environment.getAccount();
+            case "AWS::Region":
+                return environment.getRegion().id();
+            case "AWS::Partition":
+                return environment.getPartition().id();
+            case "AWS::URLSuffix":
+                return environment.getPartition().dnsSuffix();
+            default:
+                return parameters.get(name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(@Nullable Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : ImmutableMap.of();
+    }
+
+    private static List<?> asList(@Nullable Object value) {
+        return value instanceof List ? (List<?>) value : ImmutableList.of();
+    }
+}
@@ -9,12 +9,20 @@ import java.util.Objects;
  */
 public class ParameterDefinition {
 
+    private static final String SSM_PARAMETER_TYPE_PREFIX = "AWS::SSM::Parameter::Value<";
+
     private final String name;
     private final Object defaultValue;
+    private final String type;
 
     public ParameterDefinition(String name, @Nullable Object defaultValue) {
+        this(name, defaultValue, null);
+    }
+
+    public ParameterDefinition(String name, @Nullable Object defaultValue, @Nullable String type) {
         this.name = name;
         this.defaultValue = defaultValue;
+        this.type = type;
     }
 
     @Nonnull
@@ -27,18 +35,32 @@ public class ParameterDefinition {
         return defaultValue;
     }
 
+    @Nullable
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns whether the value of the parameter is resolved from the SSM Parameter Store by CloudFormation on every
+     * stack update.
+     */
+    public boolean isSsmParameter() {
+        return type != null && type.startsWith(SSM_PARAMETER_TYPE_PREFIX);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ParameterDefinition that = (ParameterDefinition) o;
         return name.equals(that.name) &&
-                Objects.equals(defaultValue, that.defaultValue);
+                Objects.equals(defaultValue, that.defaultValue) &&
+                Objects.equals(type, that.type);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, defaultValue);
+        return Objects.hash(name, defaultValue, type);
     }
 
     @Override
@@ -46,6 +68,7 @@ public class ParameterDefinition {
         return "ParameterDefinition{" +
                 "name='" + name + '\'' +
                 ", defaultValue='" + defaultValue + '\'' +
+                ", type='" + type + '\'' +
                 '}';
     }
 }
@@ -32,6 +32,14 @@ public class ResolvedEnvironment {
         this.endpointUriOpt = endpointUriOpt;
     }
 
+    /**
+     * Returns the key the clients of this environment are registered under. The same environment accessed through
+     * different endpoints gets separate clients.
+     */
+    public String getClientKey() {
+        return name + endpointUriOpt.map(URI::toString).map(uri -> "@" + uri).orElse("");
+    }
+
     public AwsCredentials getCredentials() {
         return credentialsProvider.resolveCredentials();
     }
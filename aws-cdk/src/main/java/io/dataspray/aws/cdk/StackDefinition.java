@@ -1,24 +1,60 @@
 package io.dataspray.aws.cdk;
 
 
+import com.google.common.base.Suppliers;
+import lombok.AccessLevel;
 import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.ToString;
 import lombok.Value;
 import software.amazon.awscdk.cloudassembly.schema.ContainerImageAssetMetadataEntry;
 import software.amazon.awscdk.cloudassembly.schema.FileAssetMetadataEntry;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Value
 @Builder
 public class StackDefinition {
     @Nonnull
-    String stackName;
+    String artifactId;
     @Nonnull
-    Map<String, Object> template;
+    String stackName;
+    /**
+     * Supplies the template of the stack. The template is loaded on the first access, so the templates of the stacks
+     * that are not deployed are never parsed. Only set through the {@code template} methods of the builder.
+     */
+    @NonNull
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Supplier<Map<String, Object>> templateSupplier;
+    /**
+     * The parameters and the resources derived from the template on the first access.
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Supplier<Map<String, ParameterDefinition>> parameters = Suppliers.memoize(this::parseParameters);
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Supplier<Map<String, Map<String, Object>>> resources = Suppliers.memoize(this::parseResources);
+    /**
+     * The template file in the cloud assembly or {@code null} if the template is supplied in memory. The content of the
+     * file can be submitted as is, without parsing and serializing the template.
+     */
+    @Nullable
+    Path templateFile;
     @NonNull
     List<FileAssetMetadataEntry> fileAssets;
     @NonNull
@@ -28,11 +64,67 @@ public class StackDefinition {
     @Nullable
     Integer requiredToolkitStackVersion;
     @Nonnull
-    Map<String, ParameterDefinition> parameters;
-    @Nonnull
     Map<String, String> parameterValues;
     @Nonnull
-    Map<String, Map<String, Object>> resources;
-    @Nonnull
     List<String> dependencies;
+
+    @Nonnull
+    public Map<String, Object> getTemplate() {
+        return templateSupplier.get();
+    }
+
+    @Nonnull
+    public Map<String, ParameterDefinition> getParameters() {
+        return parameters.get();
+    }
+
+    @Nonnull
+    public Map<String, Map<String, Object>> getResources() {
+        return resources.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ParameterDefinition> parseParameters() {
+        Map<String, Map<String, Object>> parameters = (Map<String, Map<String, Object>>) getTemplate().getOrDefault("Parameters", Collections.emptyMap());
+
+        return parameters.entrySet().stream()
+                .map(parameter -> {
+                    String name = parameter.getKey();
+                    Object defaultValue = parameter.getValue().get("Default");
+                    Object type = parameter.getValue().get("Type");
+                    return new ParameterDefinition(name, defaultValue, type != null ? type.toString() : null);
+                })
+                .collect(Collectors.toMap(ParameterDefinition::getName, Function.identity()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> parseResources() {
+        return (Map<String, Map<String, Object>>) getTemplate().getOrDefault("Resources", Collections.emptyMap());
+    }
+
+    public static class StackDefinitionBuilder {
+
+        private StackDefinitionBuilder templateSupplier(Supplier<Map<String, Object>> templateSupplier) {
+            this.templateSupplier = templateSupplier;
+            return this;
+        }
+
+        /**
+         * Sets the template loaded on the first access. The loaded template is cached.
+         */
+        public StackDefinitionBuilder template(Supplier<Map<String, Object>> templateSupplier) {
+            return templateSupplier(Suppliers.memoize(templateSupplier::get));
+        }
+
+        /**
+         * Sets the template file that is parsed on the first access to the template.
+         */
+        public StackDefinitionBuilder template(Path templateFile) {
+            return templateFile(templateFile).template(() -> CloudAssemblyReader.readTemplate(templateFile));
+        }
+
+        public StackDefinitionBuilder template(Map<String, Object> template) {
+            return templateSupplier(() -> template);
+        }
+    }
 }
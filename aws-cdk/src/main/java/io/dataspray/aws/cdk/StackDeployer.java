@@ -1,71 +1,125 @@
 package io.dataspray.aws.cdk;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Streams;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
 import com.google.gson.Gson;
+import lombok.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.ChangeSetStatus;
+import software.amazon.awssdk.services.cloudformation.model.ChangeSetType;
 import software.amazon.awssdk.services.cloudformation.model.CloudFormationException;
+import software.amazon.awssdk.services.cloudformation.model.DescribeChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeChangeSetResponse;
 import software.amazon.awssdk.services.cloudformation.model.Output;
 import software.amazon.awssdk.services.cloudformation.model.Stack;
 import software.amazon.awssdk.services.cloudformation.model.StackStatus;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class StackDeployer {
 
     private static final Logger logger = LoggerFactory.getLogger(StackDeployer.class);
 
-    private static final String BOOTSTRAP_VERSION_OUTPUT = "BootstrapVersion";
-    private static final String BUCKET_NAME_OUTPUT = "BucketName";
-    private static final String BUCKET_DOMAIN_NAME_OUTPUT = "BucketDomainName";
     private static final int MAX_TEMPLATE_SIZE = 50 * 1024;
 
+    /**
+     * The output holding the fingerprint of the deployed template, parameters and tags. The fingerprint is stored in
+     * an output rather than a stack tag as the stack tags are propagated to all the resources of the stack.
+     */
+    static final String FINGERPRINT_OUTPUT = "AwsCdkMavenPluginFingerprint";
+
+    /**
+     * The maximum number of outputs CloudFormation allows in a template.
+     */
+    private static final int MAX_OUTPUTS = 200;
+
+    private static final String CHANGE_SET_PREFIX = "AwsCdkMavenPlugin-";
+
     private final CloudFormationClient client;
+    private final StackSnapshot stacks;
     private final Path cloudAssemblyDirectory;
     private final ResolvedEnvironment environment;
     private final ToolkitConfiguration toolkitConfiguration;
     private final FileAssetPublisher fileAssetPublisher;
     private final DockerImageAssetPublisher dockerImagePublisher;
     private final Set<String> notificationArns;
+    private final DeployConfiguration configuration;
+    private final Executor hashExecutor;
+    @Nullable
+    private final HotswapDeployer hotswapDeployer;
+    private final Map<String, PendingChangeSet> pendingChangeSets = new ConcurrentHashMap<>();
 
     public StackDeployer(Path cloudAssemblyDirectory,
                          ResolvedEnvironment environment,
                          ToolkitConfiguration toolkitConfiguration,
                          FileAssetPublisher fileAssetPublisher,
                          DockerImageAssetPublisher dockerImagePublisher,
-                         Set<String> notificationArns) {
+                         AwsClients awsClients,
+                         Set<String> notificationArns,
+                         DeployConfiguration configuration,
+                         Executor hashExecutor) {
         this.cloudAssemblyDirectory = cloudAssemblyDirectory;
         this.environment = environment;
         this.toolkitConfiguration = toolkitConfiguration;
         this.fileAssetPublisher = fileAssetPublisher;
         this.dockerImagePublisher = dockerImagePublisher;
         this.notificationArns = notificationArns;
-        this.client = CloudFormationClientProvider.get(environment);
+        this.configuration = configuration;
+        this.hashExecutor = hashExecutor;
+        this.client = awsClients.cloudFormation(environment);
+        this.stacks = awsClients.stacks(environment);
+        this.hotswapDeployer = configuration.isHotswap()
+                ? new HotswapDeployer(environment, client, awsClients.lambda(environment))
+                : null;
     }
 
     public Stack deploy(StackDefinition stackDefinition, Map<String, ParameterValue> assetParameters, Map<String, String> parameters, Map<String, String> tags) {
+        return prepare(stackDefinition, assetParameters, parameters, tags).get();
+    }
+
+    /**
+     * Resolves the state of the stack and everything that has to be deployed without changing the stack. In the
+     * change set mode, the change set is created and computed as well. Returns the action performing the deployment,
+     * so the deployments of several stacks can be prepared concurrently and performed in the order of their
+     * dependencies.
+     */
+    Supplier<Stack> prepare(StackDefinition stackDefinition, Map<String, ParameterValue> assetParameters, Map<String, String> parameters, Map<String, String> tags) {
         String stackName = stackDefinition.getStackName();
         logger.info("Deploying '{}' stack", stackName);
 
+        boolean fingerprinted = configuration.isSkipUnchangedStacks() && isFingerprintable(stackDefinition);
+        CompletableFuture<String> templateHash = hashTemplateAsync(stackDefinition, fingerprinted);
         Map<String, ParameterValue> stackParameters = new HashMap<>();
-        Stack deployedStack = Stacks.findStack(client, stackName).orElse(null);
+        Stack deployedStack = stacks.findStack(stackName).orElse(null);
         if (deployedStack != null) {
-            if (Stacks.isInProgress(deployedStack)) {
+            if (Stacks.isInProgress(deployedStack) && deployedStack.stackStatus() != StackStatus.REVIEW_IN_PROGRESS) {
                 logger.info("Waiting until stack '{}' reaches stable state", deployedStack.stackName());
                 deployedStack = awaitCompletion(deployedStack);
             }
-            if (deployedStack.stackStatus() == StackStatus.ROLLBACK_COMPLETE || deployedStack.stackStatus() == StackStatus.ROLLBACK_FAILED) {
+            if (deployedStack.stackStatus() == StackStatus.ROLLBACK_COMPLETE || deployedStack.stackStatus() == StackStatus.ROLLBACK_FAILED ||
+                    deployedStack.stackStatus() == StackStatus.REVIEW_IN_PROGRESS) {
                 logger.warn("The stack '{}' is in {} state after unsuccessful creation. The stack will be deleted " +
                         "and re-created.", stackName, deployedStack.stackStatus());
-                deployedStack = Stacks.awaitCompletion(client, Stacks.deleteStack(client, deployedStack.stackName()));
+                deployedStack = stacks.update(Stacks.awaitCompletion(client, Stacks.deleteStack(client, deployedStack.stackName())));
             }
             if (Stacks.isFailed(deployedStack)) {
                 throw StackDeploymentException.builder(stackName, environment)
@@ -87,8 +141,6 @@ public class StackDeployer {
                 .filter(parameter -> stackDefinition.getParameters().containsKey(parameter.getKey()))
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
-        TemplateRef templateRef = getTemplateRef(stackDefinition);
-
         List<String> missingParameters = stackDefinition.getParameters().values().stream()
                 .filter(parameterDefinition -> parameterDefinition.getDefaultValue() == null)
                 .filter(parameterDefinition -> !effectiveParameters.containsKey(parameterDefinition.getName()))
@@ -101,44 +153,147 @@ public class StackDeployer {
                     .build();
         }
 
-        boolean updated = true;
-        Stack stack;
-        if (deployedStack != null && deployedStack.stackStatus() != StackStatus.DELETE_COMPLETE) {
-            try {
-                stack = Stacks.updateStack(client, stackName, templateRef, effectiveParameters, tags, notificationArns);
-            } catch (CloudFormationException e) {
-                AwsErrorDetails errorDetails = e.awsErrorDetails();
-                if (!errorDetails.errorCode().equals("ValidationError") ||
-                        !errorDetails.errorMessage().startsWith("No updates are to be performed")) {
-                    throw e;
-                }
-                logger.info("No changes of the '{}' stack are detected. The deployment will be skipped", stackName);
-                stack = deployedStack;
-                updated = false;
+        String fingerprint = null;
+        if (fingerprinted) {
+            fingerprint = fingerprint(join(templateHash), effectiveParameters, tags);
+            String deployedFingerprint = Optional.ofNullable(deployedStack)
+                    .filter(s -> s.stackStatus() != StackStatus.DELETE_COMPLETE)
+                    .filter(s -> s.stackStatus().toString().endsWith("_COMPLETE"))
+                    .flatMap(s -> Stacks.findOutput(s, FINGERPRINT_OUTPUT))
+                    .map(Output::outputValue)
+                    .orElse(null);
+            if (fingerprint.equals(deployedFingerprint)) {
+                logger.info("The template, parameters and tags of the '{}' stack haven't changed since the last " +
+                        "deployment. The deployment will be skipped", stackName);
+                Stack unchangedStack = deployedStack;
+                return () -> unchangedStack;
             }
-        } else {
-            stack = Stacks.createStack(client, stackName, templateRef, effectiveParameters, tags, notificationArns);
         }
 
-        if (updated) {
-            if (!Stacks.isCompleted(stack)) {
-                logger.info("Waiting until '{}' reaches stable state", stackName);
-                stack = awaitCompletion(stack);
+        if (hotswapDeployer != null && deployedStack != null && deployedStack.stackStatus() != StackStatus.DELETE_COMPLETE) {
+            Runnable hotswap = hotswapDeployer.prepare(stackDefinition, deployedStack, effectiveParameters, assetParameters.keySet(), tags);
+            if (hotswap != null) {
+                Stack hotswappedStack = deployedStack;
+                return () -> {
+                    hotswap.run();
+                    return hotswappedStack;
+                };
             }
-            if (Stacks.isFailed(stack)) {
-                throw StackDeploymentException.builder(stackName, environment)
-                        .withCause("The deployment has failed: " + stack.stackStatus())
-                        .build();
+        }
+
+        // The template is only re-serialized if the fingerprint has to be added, otherwise the template file is
+        // submitted as is
+        TemplateRef templateRef = fingerprint != null
+                ? getTemplateRef(stackDefinition, serialize(stackDefinition, withFingerprint(stackDefinition.getTemplate(), fingerprint)))
+                : getTemplateRef(stackDefinition, templateHash);
+
+        Stack currentStack = deployedStack != null && deployedStack.stackStatus() != StackStatus.DELETE_COMPLETE ? deployedStack : null;
+        if (configuration.isChangeSets()) {
+            return prepareChangeSet(stackName, currentStack, templateRef, effectiveParameters, tags);
+        }
+        return () -> {
+            Stack stack;
+            if (currentStack != null) {
+                try {
+                    stack = Stacks.updateStack(client, stackName, templateRef, effectiveParameters, tags, notificationArns);
+                } catch (CloudFormationException e) {
+                    AwsErrorDetails errorDetails = e.awsErrorDetails();
+                    if (!errorDetails.errorCode().equals("ValidationError") ||
+                            !errorDetails.errorMessage().startsWith("No updates are to be performed")) {
+                        throw e;
+                    }
+                    logger.info("No changes of the '{}' stack are detected. The deployment will be skipped", stackName);
+                    return currentStack;
+                }
+            } else {
+                stack = Stacks.createStack(client, stackName, templateRef, effectiveParameters, tags, notificationArns);
             }
-            if (Stacks.isRolledBack(stack)) {
-                throw StackDeploymentException.builder(stackName, environment)
-                        .withCause("The deployment has been unsuccessful, the stack has been rolled back to its previous state")
-                        .build();
+            return awaitDeployment(stackName, stack);
+        };
+    }
+
+    /**
+     * Creates the change set and waits until it's computed. An empty change set is deleted right away, so the
+     * returned action only executes the change sets that contain changes.
+     */
+    private Supplier<Stack> prepareChangeSet(String stackName, @Nullable Stack currentStack, TemplateRef templateRef,
+                                             Map<String, ParameterValue> parameters, Map<String, String> tags) {
+        ChangeSetType changeSetType = currentStack != null ? ChangeSetType.UPDATE : ChangeSetType.CREATE;
+        String changeSetId = Stacks.createChangeSet(client, stackName, CHANGE_SET_PREFIX + System.currentTimeMillis(),
+                changeSetType, templateRef, parameters, tags, notificationArns);
+        pendingChangeSets.put(changeSetId, new PendingChangeSet(stackName, changeSetType));
+        DescribeChangeSetResponse changeSet = Stacks.awaitChangeSet(client, changeSetId);
+        if (changeSet.status() == ChangeSetStatus.CREATE_COMPLETE) {
+            logger.info("The change set of the '{}' stack has been created", stackName);
+            return () -> {
+                pendingChangeSets.remove(changeSetId);
+                return awaitDeployment(stackName, Stacks.executeChangeSet(client, stackName, changeSetId));
+            };
+        }
+
+        if (changeSetType == ChangeSetType.CREATE) {
+            // The stack created along with the change set is left in the REVIEW_IN_PROGRESS state
+            stacks.update(Stacks.awaitCompletion(client, Stacks.deleteStack(client, changeSet.stackId())));
+        } else {
+            Stacks.deleteChangeSet(client, changeSetId);
+        }
+        pendingChangeSets.remove(changeSetId);
+        if (!Stacks.isEmpty(changeSet)) {
+            throw StackDeploymentException.builder(stackName, environment)
+                    .withCause("Unable to create the change set: " + changeSet.statusReason())
+                    .build();
+        }
+        logger.info("No changes of the '{}' stack are detected. The deployment will be skipped", stackName);
+        return () -> currentStack;
+    }
+
+    /**
+     * Deletes the change sets that have been created but not executed, e.g. because the deployment of another stack
+     * has failed. The stacks created along with the change sets that are still in the {@code REVIEW_IN_PROGRESS} state
+     * are deleted, so they don't block the next deployment.
+     */
+    void discardChangeSets() {
+        for (Map.Entry<String, PendingChangeSet> entry : pendingChangeSets.entrySet()) {
+            String changeSetId = entry.getKey();
+            PendingChangeSet pendingChangeSet = entry.getValue();
+            try {
+                if (pendingChangeSet.getType() == ChangeSetType.CREATE) {
+                    // The stack is referred by its id, so the stack created by another change set is never deleted
+                    String stackId = client.describeChangeSet(DescribeChangeSetRequest.builder()
+                            .changeSetName(changeSetId)
+                            .build()).stackId();
+                    Stack stack = Stacks.findStack(client, stackId).orElse(null);
+                    if (stack != null && stack.stackStatus() == StackStatus.REVIEW_IN_PROGRESS) {
+                        Stacks.awaitCompletion(client, Stacks.deleteStack(client, stackId));
+                    }
+                } else {
+                    Stacks.deleteChangeSet(client, changeSetId);
+                }
+                logger.info("The change set of the '{}' stack that hasn't been executed has been deleted", pendingChangeSet.getStackName());
+            } catch (Exception e) {
+                logger.warn("Unable to delete the change set {} of the '{}' stack", changeSetId, pendingChangeSet.getStackName(), e);
             }
-            logger.info("The stack '{}' has been successfully deployed", stackName);
+            pendingChangeSets.remove(changeSetId);
         }
+    }
 
-        return stack;
+    private Stack awaitDeployment(String stackName, Stack stack) {
+        if (!Stacks.isCompleted(stack)) {
+            logger.info("Waiting until '{}' reaches stable state", stackName);
+            stack = awaitCompletion(stack);
+        }
+        if (Stacks.isFailed(stack)) {
+            throw StackDeploymentException.builder(stackName, environment)
+                    .withCause("The deployment has failed: " + stack.stackStatus())
+                    .build();
+        }
+        if (Stacks.isRolledBack(stack)) {
+            throw StackDeploymentException.builder(stackName, environment)
+                    .withCause("The deployment has been unsuccessful, the stack has been rolled back to its previous state")
+                    .build();
+        }
+        logger.info("The stack '{}' has been successfully deployed", stackName);
+        return stacks.update(stack);
     }
 
     public ResolvedEnvironment getEnvironment() {
@@ -149,64 +304,206 @@ public class StackDeployer {
         return toolkitConfiguration;
     }
 
-    private TemplateRef getTemplateRef(StackDefinition stackDefinition) {
-        Map<String, Object> template = stackDefinition.getTemplate();
-        String templateStr;
+    private String serialize(StackDefinition stackDefinition, Map<String, Object> template) {
         try {
-            templateStr = new Gson().toJson(template);
+            return new Gson().toJson(template);
         } catch (Exception e) {
             throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
                     .withCause("Unable to parse template as json")
                     .withCause(e)
                     .build();
         }
-        byte[] templateBytes = templateStr.getBytes(StandardCharsets.UTF_8);
-        TemplateRef templateRef = null;
+    }
 
-        if (templateBytes.length <= MAX_TEMPLATE_SIZE) {
-            templateRef = TemplateRef.fromString(templateStr);
+    /**
+     * Returns whether the stack can be skipped based on its fingerprint. The values of the SSM parameters are resolved by
+     * CloudFormation on every update, so the fingerprint, which only holds their names, can't tell whether they changed.
+     */
+    private boolean isFingerprintable(StackDefinition stackDefinition) {
+        List<String> ssmParameters = stackDefinition.getParameters().values().stream()
+                .filter(ParameterDefinition::isSsmParameter)
+                .map(ParameterDefinition::getName)
+                .sorted()
+                .collect(Collectors.toList());
+        if (!ssmParameters.isEmpty()) {
+            logger.debug("The '{}' stack has SSM parameters ({}), it will be deployed even if it hasn't changed",
+                    stackDefinition.getStackName(), String.join(", ", ssmParameters));
+            return false;
+        }
+        Object outputs = stackDefinition.getTemplate().get("Outputs");
+        if (outputs instanceof Map && ((Map<?, ?>) outputs).size() >= MAX_OUTPUTS) {
+            logger.warn("The '{}' stack already has {} outputs, the maximum allowed by CloudFormation. The fingerprint " +
+                    "can't be added, the stack will be deployed even if it hasn't changed", stackDefinition.getStackName(), MAX_OUTPUTS);
+            return false;
         }
+        return true;
+    }
 
-        if (templateRef == null) {
-            Toolkit toolkit = getToolkit(stackDefinition);
-            String contentHash;
-            try {
-                contentHash = hash(templateBytes);
-            } catch (IOException e) {
-                throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
-                        .withCause("Unable to hash the template")
-                        .withCause(e)
-                        .build();
+    /**
+     * Computes the fingerprint of everything that affects the stack update: the template, the parameters, the tags and
+     * the notification ARNs. The parameters that keep their previous values are included by name only.
+     */
+    private String fingerprint(String templateHash, Map<String, ParameterValue> parameters, Map<String, String> tags) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(templateHash, StandardCharsets.UTF_8)
+                .putChar('\0');
+        new TreeMap<>(parameters).forEach((key, value) -> hasher.putString(key, StandardCharsets.UTF_8)
+                .putChar('=')
+                .putString(value.isUpdated() ? value.get() : "\0previous", StandardCharsets.UTF_8)
+                .putChar('\0'));
+        hasher.putChar('\0');
+        new TreeMap<>(tags).forEach((key, value) -> hasher.putString(key, StandardCharsets.UTF_8)
+                .putChar('=')
+                .putString(value, StandardCharsets.UTF_8)
+                .putChar('\0'));
+        hasher.putChar('\0');
+        if (notificationArns != null) {
+            new TreeSet<>(notificationArns).forEach(arn -> hasher.putString(arn, StandardCharsets.UTF_8).putChar('\0'));
+        }
+        return hasher.hash().toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> withFingerprint(Map<String, Object> template, String fingerprint) {
+        Map<String, Object> outputs = new LinkedHashMap<>();
+        Object existingOutputs = template.get("Outputs");
+        if (existingOutputs instanceof Map) {
+            outputs.putAll((Map<String, Object>) existingOutputs);
+        }
+        outputs.put(FINGERPRINT_OUTPUT, ImmutableMap.of(
+                "Description", "The fingerprint of the deployed template, parameters and tags",
+                "Value", fingerprint));
+
+        Map<String, Object> result = new LinkedHashMap<>(template);
+        result.put("Outputs", outputs);
+        return result;
+    }
+
+    /**
+     * Starts hashing the template in the background, so the hash is computed while the state of the stack is being
+     * resolved. Returns {@code null} if the hash isn't needed: the stack isn't fingerprinted and the template file is
+     * small enough to be submitted inline.
+     */
+    @Nullable
+    private CompletableFuture<String> hashTemplateAsync(StackDefinition stackDefinition, boolean fingerprinted) {
+        Path templateFile = stackDefinition.getTemplateFile();
+        if (!fingerprinted && (templateFile == null || templateFile.toFile().length() <= MAX_TEMPLATE_SIZE)) {
+            return null;
+        }
+        return CompletableFuture.supplyAsync(() -> hashTemplate(stackDefinition), hashExecutor);
+    }
+
+    private String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the hash of the template content. The template file is hashed as is if the stack has one, otherwise the
+     * template is serialized.
+     */
+    private String hashTemplate(StackDefinition stackDefinition) {
+        Path templateFile = stackDefinition.getTemplateFile();
+        try {
+            if (templateFile != null) {
+                return MoreFiles.asByteSource(templateFile).hash(Hashing.sha256()).toString();
             }
+            return hash(serialize(stackDefinition, stackDefinition.getTemplate()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
+                    .withCause("Unable to hash the template")
+                    .withCause(e)
+                    .build();
+        }
+    }
 
-            String objectName = "cdk/" + stackDefinition.getStackName() + "/" + contentHash + ".json";
+    /**
+     * Returns the reference to the unmodified template of the stack. The content of the template file is submitted
+     * as is, so the template is serialized only if it's supplied in memory or if the file is too large to be submitted
+     * inline.
+     */
+    private TemplateRef getTemplateRef(StackDefinition stackDefinition, @Nullable CompletableFuture<String> templateHash) {
+        Path templateFile = stackDefinition.getTemplateFile();
+        if (templateFile == null) {
+            return getTemplateRef(stackDefinition, serialize(stackDefinition, stackDefinition.getTemplate()));
+        }
 
-            try {
-                fileAssetPublisher.publish(templateBytes, objectName, toolkit.getBucketName(), environment);
-            } catch (IOException e) {
-                throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
-                        .withCause("An error occurred while uploading the template to the deployment bucket")
-                        .withCause(e)
-                        .build();
-            } catch (CdkException e) {
-                throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
-                        .withCause(e.getMessage())
-                        .withCause(e.getCause())
-                        .build();
-            } catch (Exception e) {
-                throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
-                        .withCause(e)
-                        .build();
+        try {
+            if (Files.size(templateFile) <= MAX_TEMPLATE_SIZE) {
+                return TemplateRef.fromString(new String(Files.readAllBytes(templateFile), StandardCharsets.UTF_8));
             }
+        } catch (IOException e) {
+            throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
+                    .withCause("Unable to read the template file " + templateFile)
+                    .withCause(e)
+                    .build();
+        }
 
-            templateRef = TemplateRef.fromUrl("https://" + toolkit.getBucketDomainName() + "/" + objectName);
+        // The template file is pretty-printed, so its compact form may still be small enough to be submitted inline
+        String compactTemplate = serialize(stackDefinition, stackDefinition.getTemplate());
+        if (compactTemplate.getBytes(StandardCharsets.UTF_8).length <= MAX_TEMPLATE_SIZE) {
+            return TemplateRef.fromString(compactTemplate);
         }
 
-        return templateRef;
+        String contentHash = templateHash != null ? join(templateHash) : hashTemplate(stackDefinition);
+        return publishTemplate(stackDefinition, contentHash, (objectName, bucketName) ->
+                fileAssetPublisher.publish(templateFile, objectName, bucketName, environment));
+    }
+
+    private TemplateRef getTemplateRef(StackDefinition stackDefinition, String templateStr) {
+        byte[] templateBytes = templateStr.getBytes(StandardCharsets.UTF_8);
+        if (templateBytes.length <= MAX_TEMPLATE_SIZE) {
+            return TemplateRef.fromString(templateStr);
+        }
+
+        String contentHash;
+        try {
+            contentHash = hash(templateBytes);
+        } catch (IOException e) {
+            throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
+                    .withCause("Unable to hash the template")
+                    .withCause(e)
+                    .build();
+        }
+
+        return publishTemplate(stackDefinition, contentHash, (objectName, bucketName) ->
+                fileAssetPublisher.publish(templateBytes, objectName, bucketName, environment));
+    }
+
+    /**
+     * Uploads the template to the deployment bucket under a name derived from its content hash.
+     */
+    private TemplateRef publishTemplate(StackDefinition stackDefinition, String contentHash, TemplateUpload upload) {
+        Toolkit toolkit = stacks.getToolkit(stackDefinition, environment, toolkitConfiguration);
+        String objectName = "cdk/" + stackDefinition.getStackName() + "/" + contentHash + ".json";
+
+        try {
+            upload.publish(objectName, toolkit.getBucketName());
+        } catch (IOException e) {
+            throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
+                    .withCause("An error occurred while uploading the template to the deployment bucket")
+                    .withCause(e)
+                    .build();
+        } catch (CdkException e) {
+            throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
+                    .withCause(e.getMessage())
+                    .withCause(e.getCause())
+                    .build();
+        } catch (Exception e) {
+            throw StackDeploymentException.builder(stackDefinition.getStackName(), environment)
+                    .withCause(e)
+                    .build();
+        }
+
+        return TemplateRef.fromUrl("https://" + toolkit.getBucketDomainName() + "/" + objectName);
     }
 
     public Optional<Stack> destroy(StackDefinition stackDefinition) {
-        Stack stack = Stacks.findStack(client, stackDefinition.getStackName()).orElse(null);
+        Stack stack = stacks.findStack(stackDefinition.getStackName()).orElse(null);
         if (stack != null && stack.stackStatus() != StackStatus.DELETE_COMPLETE) {
             logger.info("The stack '${} is being deleted, awaiting until the operation is completed", stackDefinition.getStackName());
             stack = awaitCompletion(Stacks.deleteStack(client, stack.stackId()));
@@ -226,65 +523,6 @@ public class StackDeployer {
         return ByteSource.wrap(data).hash(Hashing.sha256()).toString();
     }
 
-    private Toolkit getToolkit(StackDefinition stack) {
-        Stack toolkitStack = Stacks.findStack(client, toolkitConfiguration.getStackName()).orElse(null);
-        if (toolkitStack != null && Stacks.isInProgress(toolkitStack)) {
-            logger.info("Waiting until toolkit stack reaches stable state, environment={}, stackName={}",
-                    environment, toolkitConfiguration.getStackName());
-            toolkitStack = awaitCompletion(toolkitStack);
-        }
-
-        if (toolkitStack == null || toolkitStack.stackStatus() == StackStatus.DELETE_COMPLETE ||
-                toolkitStack.stackStatus() == StackStatus.ROLLBACK_COMPLETE) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The stack " + stack.getStackName() + " requires a bootstrap. Did you forged to " +
-                            "add 'bootstrap' goal to the execution")
-                    .build();
-        }
-
-        if (Stacks.isFailed(toolkitStack)) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The toolkit stack is in failed state. Please make sure that the toolkit stack is " +
-                            "stable before the deployment")
-                    .build();
-        }
-
-        Map<String, String> outputs = toolkitStack.outputs().stream()
-                .collect(Collectors.toMap(Output::outputKey, Output::outputValue));
-
-        if (stack.getRequiredToolkitStackVersion() != null) {
-            Integer toolkitStackVersion = Optional.ofNullable(outputs.get(BOOTSTRAP_VERSION_OUTPUT))
-                    .map(Integer::parseInt)
-                    .orElse(0);
-            if (toolkitStackVersion < stack.getRequiredToolkitStackVersion()) {
-                throw StackDeploymentException.builder(stack.getStackName(), environment)
-                        .withCause("The toolkit stack version '" + outputs.get(BOOTSTRAP_VERSION_OUTPUT) + "' is lower than"
-                                + " the minimum version '" + stack.getRequiredToolkitStackVersion() + "' required by the stack."
-                                + " Please update the toolkit stack or add 'bootstrap' goal to the plugin"
-                                + " execution if you want the plugin to automatically create or update toolkit stack")
-                        .build();
-            }
-        }
-
-        String bucketName = outputs.get(BUCKET_NAME_OUTPUT);
-        if (bucketName == null) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The toolkit stack " + toolkitConfiguration.getStackName() + " doesn't have a " +
-                            "required output '" + BUCKET_NAME_OUTPUT + "'")
-                    .build();
-        }
-
-        String bucketDomainName = outputs.get(BUCKET_DOMAIN_NAME_OUTPUT);
-        if (bucketDomainName == null) {
-            throw StackDeploymentException.builder(stack.getStackName(), environment)
-                    .withCause("The toolkit stack " + toolkitConfiguration.getStackName() + " doesn't have a " +
-                            "required output '" + BUCKET_DOMAIN_NAME_OUTPUT + "'")
-                    .build();
-        }
-
-        return new Toolkit(bucketName, bucketDomainName);
-    }
-
     private Stack awaitCompletion(Stack stack) {
         Stack completedStack;
         if (logger.isInfoEnabled()) {
@@ -292,7 +530,18 @@ public class StackDeployer {
         } else {
             completedStack = Stacks.awaitCompletion(client, stack);
         }
-        return completedStack;
+        return stacks.update(completedStack);
+    }
+
+    @Value
+    private static class PendingChangeSet {
+        String stackName;
+        ChangeSetType type;
+    }
+
+    @FunctionalInterface
+    private interface TemplateUpload {
+        void publish(String objectName, String bucketName) throws IOException;
     }
 
 }
@@ -0,0 +1,126 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Executes an action for each of the given stacks respecting the dependencies between them. An action for a stack is
+ * started as soon as the actions for all of its dependencies have completed, so independent stacks are processed
+ * concurrently. The number of actions running at the same time is limited per environment.
+ */
+public class StackDeploymentScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StackDeploymentScheduler.class);
+
+    private final int concurrency;
+
+    /**
+     * @param concurrency the maximum number of actions running concurrently within a single environment
+     */
+    public StackDeploymentScheduler(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be greater than zero");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Executes the action for each of the given stacks. Dependencies on stacks that are not in the given list are
+     * considered to be satisfied. Once an action fails, no new actions are started, the actions that are already
+     * running are awaited and the first failure is rethrown.
+     *
+     * @param stacks the stacks sorted topologically
+     * @param action the action to be executed for each stack
+     */
+    public void execute(List<StackDefinition> stacks, Consumer<StackDefinition> action) {
+        Map<String, StackDefinition> pending = new LinkedHashMap<>();
+        stacks.forEach(stack -> pending.put(stack.getArtifactId(), stack));
+        Set<String> remaining = new LinkedHashSet<>(pending.keySet());
+        Map<String, Integer> running = new HashMap<>();
+        Map<Future<StackDefinition>, StackDefinition> inFlight = new HashMap<>();
+        List<RuntimeException> failures = new ArrayList<>();
+
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("cdk-deploy-%d")
+                .setDaemon(true)
+                .build());
+        CompletionService<StackDefinition> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                if (failures.isEmpty()) {
+                    Iterator<StackDefinition> pendingIterator = pending.values().iterator();
+                    while (pendingIterator.hasNext()) {
+                        StackDefinition stack = pendingIterator.next();
+                        if (running.getOrDefault(stack.getEnvironment(), 0) < concurrency && isReady(stack, remaining)) {
+                            pendingIterator.remove();
+                            running.merge(stack.getEnvironment(), 1, Integer::sum);
+                            inFlight.put(completionService.submit(() -> {
+                                action.accept(stack);
+                                return stack;
+                            }), stack);
+                        }
+                    }
+                }
+
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                Future<StackDefinition> future = completionService.take();
+                StackDefinition stack = inFlight.remove(future);
+                running.merge(stack.getEnvironment(), -1, Integer::sum);
+                try {
+                    future.get();
+                    remaining.remove(stack.getArtifactId());
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new CdkException("An error occurred while deploying the stack '" + stack.getStackName() + "'", e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.keySet().forEach(future -> future.cancel(true));
+            throw new CdkException("The deployment has been interrupted", e);
+        } finally {
+            executor.shutdown();
+        }
+
+        if (!failures.isEmpty()) {
+            if (!pending.isEmpty()) {
+                logger.warn("The following stacks have not been deployed due to the previous errors: {}",
+                        pending.values().stream().map(StackDefinition::getStackName).collect(Collectors.joining(", ")));
+            }
+            RuntimeException failure = failures.get(0);
+            failures.stream().skip(1).forEach(failure::addSuppressed);
+            throw failure;
+        }
+
+        if (!pending.isEmpty()) {
+            throw new CdkException("Unable to resolve the deployment order of the following stacks due to circular " +
+                    "dependencies: " + pending.values().stream().map(StackDefinition::getStackName).collect(Collectors.joining(", ")));
+        }
+    }
+
+    private boolean isReady(StackDefinition stack, Set<String> remaining) {
+        return stack.getDependencies().stream().noneMatch(remaining::contains);
+    }
+}
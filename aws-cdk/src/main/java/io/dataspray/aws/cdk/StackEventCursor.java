@@ -0,0 +1,85 @@
+package io.dataspray.aws.cdk;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackEventsRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackEventsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Consumes the events of a stack incrementally. The cursor keeps the timestamp of the latest consumed event along with
+ * the IDs of the events having that timestamp, so only the pages with the new events are fetched and the memory used
+ * by the cursor doesn't grow with the number of events.
+ */
+class StackEventCursor {
+
+    private final CloudFormationClient client;
+    private final String stackId;
+    private final Consumer<StackEvent> consumer;
+    private final Set<String> watermarkEventIds = new HashSet<>();
+    private Instant watermark;
+    private boolean closed;
+
+    /**
+     * @param notBefore the events older than this timestamp are ignored
+     */
+    StackEventCursor(CloudFormationClient client, String stackId, Instant notBefore, Consumer<StackEvent> consumer) {
+        this.client = client;
+        this.stackId = stackId;
+        this.watermark = notBefore;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Fetches the events published since the previous poll and passes them to the consumer in chronological order.
+     */
+    synchronized void poll() {
+        if (closed) {
+            return;
+        }
+
+        // The events are returned starting from the most recent one
+        List<StackEvent> events = new ArrayList<>();
+        String token = null;
+        fetch:
+        do {
+            DescribeStackEventsResponse response = client.describeStackEvents(DescribeStackEventsRequest.builder()
+                    .stackName(stackId)
+                    .nextToken(token)
+                    .build());
+            for (StackEvent event : response.stackEvents()) {
+                if (event.timestamp().isBefore(watermark)) {
+                    break fetch;
+                }
+                if (!event.timestamp().equals(watermark) || !watermarkEventIds.contains(event.eventId())) {
+                    events.add(event);
+                }
+            }
+            token = response.nextToken();
+        } while (token != null);
+
+        for (int i = events.size() - 1; i >= 0; i--) {
+            StackEvent event = events.get(i);
+            if (event.timestamp().isAfter(watermark)) {
+                watermark = event.timestamp();
+                watermarkEventIds.clear();
+            }
+            watermarkEventIds.add(event.eventId());
+            consumer.accept(event);
+        }
+    }
+
+    /**
+     * Consumes the remaining events. No events are consumed after the cursor is closed.
+     */
+    synchronized void close() {
+        poll();
+        closed = true;
+    }
+}
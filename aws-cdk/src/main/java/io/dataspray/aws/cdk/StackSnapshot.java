@@ -0,0 +1,172 @@
+package io.dataspray.aws.cdk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.CloudFormationException;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksResponse;
+import software.amazon.awssdk.services.cloudformation.model.Output;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the state of the stacks of an environment. The snapshot can be populated with all the stacks of the
+ * environment at once using a single paginated {@code DescribeStacks} request; otherwise, the stacks are described
+ * one by one on the first access. The cached state is updated with the results of the operations performed on the
+ * stacks, and the toolkit information is resolved once per toolkit stack.
+ */
+class StackSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(StackSnapshot.class);
+
+    /**
+     * The minimum number of stacks accessed within an environment required to list all the stacks of the environment
+     * at once instead of describing them one by one.
+     */
+    static final int LISTING_THRESHOLD = 3;
+
+    private static final String BOOTSTRAP_VERSION_OUTPUT = "BootstrapVersion";
+    private static final String BUCKET_NAME_OUTPUT = "BucketName";
+    private static final String BUCKET_DOMAIN_NAME_OUTPUT = "BucketDomainName";
+
+    private final CloudFormationClient client;
+    private final ConcurrentMap<String, Optional<Stack>> stacks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Toolkit> toolkits = new ConcurrentHashMap<>();
+    private volatile boolean complete;
+
+    StackSnapshot(CloudFormationClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Populates the snapshot with all the stacks of the environment. If the stacks can't be listed, they are described
+     * one by one on the first access.
+     */
+    void refresh() {
+        Map<String, Optional<Stack>> listedStacks = new HashMap<>();
+        try {
+            String token = null;
+            do {
+                DescribeStacksResponse response = client.describeStacks(DescribeStacksRequest.builder()
+                        .nextToken(token)
+                        .build());
+                response.stacks().forEach(stack -> listedStacks.put(stack.stackName(), Optional.of(stack)));
+                token = response.nextToken();
+            } while (token != null);
+        } catch (CloudFormationException e) {
+            logger.debug("Unable to list the stacks, they will be described one by one", e);
+            return;
+        }
+
+        stacks.putAll(listedStacks);
+        stacks.replaceAll((stackName, stack) -> listedStacks.getOrDefault(stackName, Optional.empty()));
+        complete = true;
+    }
+
+    /**
+     * Returns the cached state of the stack describing the stack if it hasn't been accessed yet.
+     */
+    Optional<Stack> findStack(String stackName) {
+        Optional<Stack> stack = stacks.get(stackName);
+        if (stack == null) {
+            if (complete) {
+                return Optional.empty();
+            }
+            stack = Stacks.findStack(client, stackName);
+            stacks.putIfAbsent(stackName, stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Updates the cached state of the stack after an operation performed on it.
+     */
+    Stack update(Stack stack) {
+        stacks.put(stack.stackName(), stack.stackStatus() != StackStatus.DELETE_COMPLETE ? Optional.of(stack) : Optional.empty());
+        return stack;
+    }
+
+    /**
+     * Returns the toolkit information for the given stack making sure the toolkit stack satisfies its requirements.
+     */
+    Toolkit getToolkit(StackDefinition stack, ResolvedEnvironment environment, ToolkitConfiguration toolkitConfiguration) {
+        Toolkit toolkit = toolkits.get(toolkitConfiguration.getStackName());
+        if (toolkit == null) {
+            toolkit = resolveToolkit(stack, environment, toolkitConfiguration);
+            toolkits.putIfAbsent(toolkitConfiguration.getStackName(), toolkit);
+        }
+
+        if (stack.getRequiredToolkitStackVersion() != null && toolkit.getVersion() < stack.getRequiredToolkitStackVersion()) {
+            throw StackDeploymentException.builder(stack.getStackName(), environment)
+                    .withCause("The toolkit stack version '" + toolkit.getVersion() + "' is lower than"
+                            + " the minimum version '" + stack.getRequiredToolkitStackVersion() + "' required by the stack."
+                            + " Please update the toolkit stack or add 'bootstrap' goal to the plugin"
+                            + " execution if you want the plugin to automatically create or update toolkit stack")
+                    .build();
+        }
+
+        return toolkit;
+    }
+
+    private Toolkit resolveToolkit(StackDefinition stack, ResolvedEnvironment environment, ToolkitConfiguration toolkitConfiguration) {
+        Stack toolkitStack = findStack(toolkitConfiguration.getStackName()).orElse(null);
+        if (toolkitStack != null && Stacks.isInProgress(toolkitStack)) {
+            logger.info("Waiting until toolkit stack reaches stable state, environment={}, stackName={}",
+                    environment, toolkitConfiguration.getStackName());
+            if (logger.isInfoEnabled()) {
+                toolkitStack = Stacks.awaitCompletion(client, toolkitStack, new LoggingStackEventListener(Stacks.lastChange(toolkitStack)));
+            } else {
+                toolkitStack = Stacks.awaitCompletion(client, toolkitStack);
+            }
+            update(toolkitStack);
+        }
+
+        if (toolkitStack == null || toolkitStack.stackStatus() == StackStatus.DELETE_COMPLETE ||
+                toolkitStack.stackStatus() == StackStatus.ROLLBACK_COMPLETE) {
+            throw StackDeploymentException.builder(stack.getStackName(), environment)
+                    .withCause("The stack " + stack.getStackName() + " requires a bootstrap. Did you forged to " +
+                            "add 'bootstrap' goal to the execution")
+                    .build();
+        }
+
+        if (Stacks.isFailed(toolkitStack)) {
+            throw StackDeploymentException.builder(stack.getStackName(), environment)
+                    .withCause("The toolkit stack is in failed state. Please make sure that the toolkit stack is " +
+                            "stable before the deployment")
+                    .build();
+        }
+
+        Map<String, String> outputs = toolkitStack.outputs().stream()
+                .collect(Collectors.toMap(Output::outputKey, Output::outputValue));
+
+        String bucketName = outputs.get(BUCKET_NAME_OUTPUT);
+        if (bucketName == null) {
+            throw StackDeploymentException.builder(stack.getStackName(), environment)
+                    .withCause("The toolkit stack " + toolkitConfiguration.getStackName() + " doesn't have a " +
+                            "required output '" + BUCKET_NAME_OUTPUT + "'")
+                    .build();
+        }
+
+        String bucketDomainName = outputs.get(BUCKET_DOMAIN_NAME_OUTPUT);
+        if (bucketDomainName == null) {
+            throw StackDeploymentException.builder(stack.getStackName(), environment)
+                    .withCause("The toolkit stack " + toolkitConfiguration.getStackName() + " doesn't have a " +
+                            "required output '" + BUCKET_DOMAIN_NAME_OUTPUT + "'")
+                    .build();
+        }
+
+        int version = Optional.ofNullable(outputs.get(BOOTSTRAP_VERSION_OUTPUT))
+                .map(Integer::parseInt)
+                .orElse(0);
+
+        return new Toolkit(bucketName, bucketDomainName, version);
+    }
+}
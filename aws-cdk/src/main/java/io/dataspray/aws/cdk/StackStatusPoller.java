@@ -0,0 +1,260 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.CloudFormationException;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksResponse;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Polls the status of the stacks being deployed until they reach a stable state. All the stacks are polled using a
+ * single schedule: the stacks accessed through the same client are polled together and, if there are enough of them,
+ * their statuses are retrieved using a single paginated {@code DescribeStacks} request. The polling interval is reset
+ * to the minimum after each status transition and grows with jitter while the stacks remain in the same state.
+ */
+class StackStatusPoller {
+
+    private static final Logger logger = LoggerFactory.getLogger(StackStatusPoller.class);
+
+    private static final StackStatusPoller INSTANCE = new StackStatusPoller(Duration.ofSeconds(1), Duration.ofSeconds(10));
+
+    /**
+     * The minimum number of stacks polled through the same client required to list all the stacks at once instead of
+     * describing them one by one.
+     */
+    private static final int BATCH_THRESHOLD = 3;
+    private static final double BACKOFF_MULTIPLIER = 1.5;
+    private static final double JITTER = 0.2;
+
+    private final Duration minDelay;
+    private final Duration maxDelay;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+    private final Map<CloudFormationClient, ClientGroup> groups = new IdentityHashMap<>();
+
+    StackStatusPoller(Duration minDelay, Duration maxDelay) {
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cdk-stack-poller-scheduler")
+                .setDaemon(true)
+                .build());
+        this.workers = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("cdk-stack-poller-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    static StackStatusPoller getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a future that is completed once the stack reaches a stable state.
+     *
+     * @param client the client to be used to retrieve the status of the stack
+     * @param stack  the current state of the stack
+     * @param onPoll an optional callback invoked with the retrieved state of the stack after each poll
+     */
+    CompletableFuture<Stack> await(CloudFormationClient client, Stack stack, @Nullable Consumer<Stack> onPoll) {
+        if (Stacks.isCompleted(stack)) {
+            return CompletableFuture.completedFuture(stack);
+        }
+
+        Watch watch = new Watch(stack.stackId(), stack.stackStatus(), onPoll);
+        synchronized (this) {
+            ClientGroup group = groups.computeIfAbsent(client, ClientGroup::new);
+            group.watches.add(watch);
+            group.reset = true;
+            if (!group.polling && (group.next == null || group.next.getDelay(TimeUnit.NANOSECONDS) > minDelay.toNanos())) {
+                if (group.next != null) {
+                    group.next.cancel(false);
+                }
+                schedule(group, minDelay);
+            }
+        }
+        return watch.future;
+    }
+
+    /**
+     * Runs the task periodically using the poller's threads until the returned future is cancelled. The task is
+     * skipped if its previous run hasn't finished yet, and its failures are ignored.
+     */
+    ScheduledFuture<?> repeat(Runnable task, Duration period) {
+        AtomicBoolean running = new AtomicBoolean();
+        return scheduler.scheduleWithFixedDelay(() -> {
+            if (running.compareAndSet(false, true)) {
+                workers.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.debug("The periodic task has failed", e);
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            }
+        }, period.toNanos(), period.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void schedule(ClientGroup group, Duration delay) {
+        group.next = scheduler.schedule(() -> workers.execute(() -> poll(group)), delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void poll(ClientGroup group) {
+        List<Watch> watches;
+        synchronized (this) {
+            if (group.polling) {
+                return;
+            }
+            group.polling = true;
+            group.next = null;
+            watches = new ArrayList<>(group.watches);
+        }
+
+        boolean transition = false;
+        List<Watch> completed = new ArrayList<>();
+        try {
+            Map<String, Stack> stacks = describe(group, watches);
+            for (Watch watch : watches) {
+                Stack stack = stacks.get(watch.stackId);
+                if (stack == null) {
+                    completed.add(watch);
+                    continue;
+                }
+                transition |= stack.stackStatus() != watch.status;
+                watch.status = stack.stackStatus();
+                try {
+                    if (watch.onPoll != null) {
+                        watch.onPoll.accept(stack);
+                    }
+                    if (Stacks.isCompleted(stack)) {
+                        completed.add(watch);
+                        watch.future.complete(stack);
+                    }
+                } catch (RuntimeException e) {
+                    completed.add(watch);
+                    watch.future.completeExceptionally(e);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Never leave the callers waiting because of an unexpected error
+            completed.addAll(watches);
+            watches.forEach(watch -> watch.future.completeExceptionally(e));
+        } finally {
+            synchronized (this) {
+                group.polling = false;
+                group.watches.removeAll(completed);
+                if (group.watches.isEmpty()) {
+                    groups.remove(group.client);
+                } else if (group.next == null) {
+                    group.delay = transition || group.reset ? minDelay : backoff(group.delay);
+                    group.reset = false;
+                    schedule(group, jitter(group.delay));
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the current state of the polled stacks. If the stack can't be retrieved, the corresponding watch is
+     * completed exceptionally and the stack is absent in the result.
+     */
+    private Map<String, Stack> describe(ClientGroup group, List<Watch> watches) {
+        Map<String, Stack> stacks = new HashMap<>();
+        if (watches.size() >= BATCH_THRESHOLD && group.listingPages < watches.size()) {
+            try {
+                int pages = 0;
+                String token = null;
+                do {
+                    DescribeStacksResponse response = group.client.describeStacks(DescribeStacksRequest.builder()
+                            .nextToken(token)
+                            .build());
+                    response.stacks().forEach(stack -> stacks.put(stack.stackId(), stack));
+                    token = response.nextToken();
+                    pages++;
+                } while (token != null);
+                group.listingPages = pages;
+            } catch (CloudFormationException e) {
+                logger.debug("Unable to list the stacks, falling back to describing them one by one", e);
+                group.listingPages = Integer.MAX_VALUE;
+            }
+        }
+
+        for (Watch watch : watches) {
+            // Deleted stacks are not listed and have to be described explicitly
+            if (!stacks.containsKey(watch.stackId)) {
+                try {
+                    stacks.put(watch.stackId, group.client.describeStacks(DescribeStacksRequest.builder()
+                            .stackName(watch.stackId)
+                            .build()).stacks().get(0));
+                } catch (RuntimeException e) {
+                    watch.future.completeExceptionally(e);
+                }
+            }
+        }
+        return stacks;
+    }
+
+    Duration backoff(Duration delay) {
+        long nextDelay = (long) (delay.toMillis() * BACKOFF_MULTIPLIER);
+        return Duration.ofMillis(Math.min(Math.max(nextDelay, minDelay.toMillis()), maxDelay.toMillis()));
+    }
+
+    Duration jitter(Duration delay) {
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Duration.ofMillis((long) (delay.toMillis() * factor));
+    }
+
+    private class ClientGroup {
+
+        private final CloudFormationClient client;
+        private final Set<Watch> watches = new LinkedHashSet<>();
+        private Duration delay = minDelay;
+        private ScheduledFuture<?> next;
+        private boolean polling;
+        private boolean reset;
+        private int listingPages;
+
+        private ClientGroup(CloudFormationClient client) {
+            this.client = client;
+        }
+    }
+
+    private static class Watch {
+
+        private final String stackId;
+        private final Consumer<Stack> onPoll;
+        private final CompletableFuture<Stack> future = new CompletableFuture<>();
+        private volatile StackStatus status;
+
+        private Watch(String stackId, StackStatus status, @Nullable Consumer<Stack> onPoll) {
+            this.stackId = stackId;
+            this.status = status;
+            this.onPoll = onPoll;
+        }
+    }
+}
@@ -3,13 +3,19 @@ package io.dataspray.aws.cdk;
 import com.google.common.collect.ImmutableSet;
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
 import software.amazon.awssdk.services.cloudformation.model.Capability;
+import software.amazon.awssdk.services.cloudformation.model.ChangeSetStatus;
+import software.amazon.awssdk.services.cloudformation.model.ChangeSetType;
 import software.amazon.awssdk.services.cloudformation.model.CloudFormationException;
+import software.amazon.awssdk.services.cloudformation.model.CreateChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.CreateChangeSetResponse;
 import software.amazon.awssdk.services.cloudformation.model.CreateStackRequest;
 import software.amazon.awssdk.services.cloudformation.model.CreateStackResponse;
+import software.amazon.awssdk.services.cloudformation.model.DeleteChangeSetRequest;
 import software.amazon.awssdk.services.cloudformation.model.DeleteStackRequest;
-import software.amazon.awssdk.services.cloudformation.model.DescribeStackEventsRequest;
-import software.amazon.awssdk.services.cloudformation.model.DescribeStackEventsResponse;
+import software.amazon.awssdk.services.cloudformation.model.DescribeChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeChangeSetResponse;
 import software.amazon.awssdk.services.cloudformation.model.DescribeStacksRequest;
+import software.amazon.awssdk.services.cloudformation.model.ExecuteChangeSetRequest;
 import software.amazon.awssdk.services.cloudformation.model.Output;
 import software.amazon.awssdk.services.cloudformation.model.Parameter;
 import software.amazon.awssdk.services.cloudformation.model.Stack;
@@ -22,29 +28,22 @@ import software.amazon.awssdk.services.cloudformation.model.UpdateStackResponse;
 import javax.annotation.Nullable;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Stacks {
 
-    private static final ScheduledExecutorService SCHEDULER = new ScheduledThreadPoolExecutor(0);
+    private static final Duration EVENT_POLLING_PERIOD = Duration.ofSeconds(2);
+    private static final Duration CHANGE_SET_POLLING_MIN_DELAY = Duration.ofSeconds(1);
+    private static final Duration CHANGE_SET_POLLING_MAX_DELAY = Duration.ofSeconds(5);
 
     private static final Capability[] CAPABILITIES =
             new Capability[]{Capability.CAPABILITY_IAM, Capability.CAPABILITY_NAMED_IAM, Capability.CAPABILITY_AUTO_EXPAND};
@@ -121,6 +120,85 @@ public class Stacks {
         return getStack(client, response.stackId());
     }
 
+    /**
+     * Creates a change set for the stack. The stack is created in the {@code REVIEW_IN_PROGRESS} state if the change set
+     * is of type {@link ChangeSetType#CREATE}.
+     *
+     * @return the id of the change set
+     */
+    public static String createChangeSet(CloudFormationClient client,
+                                         String stackName,
+                                         String changeSetName,
+                                         ChangeSetType changeSetType,
+                                         TemplateRef template,
+                                         Map<String, ParameterValue> parameters,
+                                         Map<String, String> tags,
+                                         Set<String> notificationArns) {
+        Objects.requireNonNull(client, "CloudFormation client can't be null");
+        Objects.requireNonNull(stackName, "stack name can't be null");
+        Objects.requireNonNull(template, "template reference can't be null");
+        CreateChangeSetRequest.Builder requestBuilder = CreateChangeSetRequest.builder()
+                .stackName(stackName)
+                .changeSetName(changeSetName)
+                .changeSetType(changeSetType)
+                .templateBody(template.getBody())
+                .templateURL(template.getUrl())
+                .tags(buildTags(tags))
+                .parameters(parameters != null ? buildParameters(parameters) : Collections.emptyList())
+                .capabilities(CAPABILITIES);
+        if (notificationArns != null && !notificationArns.isEmpty()) {
+            requestBuilder.notificationARNs(notificationArns);
+        }
+
+        CreateChangeSetResponse response = client.createChangeSet(requestBuilder.build());
+        return response.id();
+    }
+
+    /**
+     * Waits until CloudFormation finishes computing the change set.
+     */
+    public static DescribeChangeSetResponse awaitChangeSet(CloudFormationClient client, String changeSetId) {
+        DescribeChangeSetRequest request = DescribeChangeSetRequest.builder()
+                .changeSetName(changeSetId)
+                .build();
+        long delay = CHANGE_SET_POLLING_MIN_DELAY.toMillis();
+        while (true) {
+            DescribeChangeSetResponse changeSet = client.describeChangeSet(request);
+            if (changeSet.status() != ChangeSetStatus.CREATE_PENDING && changeSet.status() != ChangeSetStatus.CREATE_IN_PROGRESS) {
+                return changeSet;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CdkException("Interrupted while waiting for the change set " + changeSetId, e);
+            }
+            delay = Math.min(delay * 2, CHANGE_SET_POLLING_MAX_DELAY.toMillis());
+        }
+    }
+
+    /**
+     * Checks whether the change set has failed because it doesn't contain any changes.
+     */
+    public static boolean isEmpty(DescribeChangeSetResponse changeSet) {
+        String reason = changeSet.statusReason();
+        return changeSet.status() == ChangeSetStatus.FAILED && reason != null &&
+                (reason.contains("didn't contain changes") || reason.contains("No updates are to be performed"));
+    }
+
+    public static Stack executeChangeSet(CloudFormationClient client, String stackName, String changeSetId) {
+        client.executeChangeSet(ExecuteChangeSetRequest.builder()
+                .changeSetName(changeSetId)
+                .build());
+        return getStack(client, stackName);
+    }
+
+    public static void deleteChangeSet(CloudFormationClient client, String changeSetId) {
+        client.deleteChangeSet(DeleteChangeSetRequest.builder()
+                .changeSetName(changeSetId)
+                .build());
+    }
+
     private static List<Tag> buildTags(Map<String, String> tags) {
         return tags.entrySet().stream()
                 .map(tag -> Tag.builder()
@@ -188,87 +266,27 @@ public class Stacks {
     }
 
     public static Stack awaitCompletion(CloudFormationClient client, Stack stack) {
-        return awaitCompletion(client, stack, ForkJoinPool.commonPool(), null).join();
+        return StackStatusPoller.getInstance().await(client, stack, null).join();
     }
 
     public static Stack awaitCompletion(CloudFormationClient client, Stack stack, @Nullable Consumer<StackEvent> eventListener) {
-        StackEventListener stackEventListener = eventListener != null ? new StackEventListener(eventListener) : null;
-        return awaitCompletion(client, stack, ForkJoinPool.commonPool(), stackEventListener).join();
-    }
-
-    private static CompletableFuture<Stack> awaitCompletion(CloudFormationClient client,
-                                                            Stack initialStack,
-                                                            Executor executor,
-                                                            @Nullable StackEventListener eventListener) {
-        CompletableFuture<Stack> stackFuture;
-        if (eventListener != null) {
-            stackFuture = CompletableFuture.runAsync(() -> consumeEvents(client, initialStack.stackId(), eventListener), executor)
-                    .thenCompose(r -> CompletableFuture.completedFuture(initialStack));
-        } else {
-            stackFuture = CompletableFuture.completedFuture(initialStack);
+        if (eventListener == null) {
+            return awaitCompletion(client, stack);
         }
 
-        return stackFuture.thenCompose(stack -> {
-            if (isCompleted(stack)) {
-                return CompletableFuture.completedFuture(stack);
-            }
-
-            Supplier<Stack> statusRequest = () -> {
-                Stack nextStack = getStack(client, stack.stackId());
-                if (eventListener != null) {
-                    consumeEvents(client, nextStack.stackId(), eventListener);
-                }
-                return nextStack;
-            };
-
-            return awaitCompletion(statusRequest, Duration.ZERO, Duration.ofSeconds(5), executor);
-        });
-    }
-
-    private static CompletableFuture<Stack> awaitCompletion(Supplier<Stack> request,
-                                                            Duration initialDelay,
-                                                            Duration period,
-                                                            Executor executor) {
-        if (initialDelay.isNegative() || period.isNegative()) {
-            throw new IllegalArgumentException("The initial delay and period must be equal or greater than zero");
+        // The events are polled independently of the status, so the completion is detected regardless of the number
+        // of events published by the stack
+        StackEventCursor eventCursor = new StackEventCursor(client, stack.stackId(), lastChange(stack), eventListener);
+        StackStatusPoller poller = StackStatusPoller.getInstance();
+        ScheduledFuture<?> eventPolling = poller.repeat(eventCursor::poll, EVENT_POLLING_PERIOD);
+        Stack completedStack;
+        try {
+            completedStack = poller.await(client, stack, null).join();
+        } finally {
+            eventPolling.cancel(false);
         }
-
-        Executor effectiveExecutor = initialDelay.isZero() ? executor : delayedExecutor(executor, initialDelay);
-        return CompletableFuture.supplyAsync(request, effectiveExecutor)
-                .thenCompose(stack -> {
-                    if (isCompleted(stack)) {
-                        return CompletableFuture.completedFuture(stack);
-                    }
-
-                    return awaitCompletion(request, period, period, executor);
-                });
-    }
-
-    private static Executor delayedExecutor(Executor executor, Duration delay) {
-        return command -> SCHEDULER.schedule(() -> executor.execute(command), delay.toNanos(), TimeUnit.NANOSECONDS);
-    }
-
-    private static void consumeEvents(CloudFormationClient client, String stackId, StackEventListener eventListener) {
-        Deque<StackEvent> events = new ArrayDeque<>();
-        String token = null;
-        do {
-            DescribeStackEventsRequest eventsRequest = DescribeStackEventsRequest.builder()
-                    .stackName(stackId)
-                    .nextToken(token)
-                    .build();
-            DescribeStackEventsResponse eventsResponse = client.describeStackEvents(eventsRequest);
-            token = eventsResponse.nextToken();
-
-            for (StackEvent event : eventsResponse.stackEvents()) {
-                if (eventListener.isConsumed(event)) {
-                    token = null;
-                    break;
-                }
-                events.add(event);
-            }
-        } while (token != null);
-
-        events.descendingIterator().forEachRemaining(eventListener::onEvent);
+        eventCursor.close();
+        return completedStack;
     }
 
     private static Stack getStack(CloudFormationClient client, String stackName) {
@@ -277,30 +295,4 @@ public class Stacks {
                 .build();
         return client.describeStacks(request).stacks().get(0);
     }
-
-    private static class StackEventListener {
-
-        private final Consumer<StackEvent> consumer;
-        private final Set<String> consumed;
-
-        public StackEventListener(Consumer<StackEvent> consumer) {
-            this.consumer = consumer;
-            this.consumed = new HashSet<>();
-        }
-
-        public boolean onEvent(StackEvent event) {
-            if (isConsumed(event)) {
-                return false;
-            }
-
-            consumed.add(event.eventId());
-            consumer.accept(event);
-            return true;
-        }
-
-        public boolean isConsumed(StackEvent event) {
-            return consumed.contains(event.eventId());
-        }
-
-    }
 }
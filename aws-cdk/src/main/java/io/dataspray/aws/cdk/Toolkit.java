@@ -7,10 +7,16 @@ public class Toolkit {
 
     private final String bucketName;
     private final String bucketDomainName;
+    private final int version;
 
     public Toolkit(String bucketName, String bucketEndpoint) {
+        this(bucketName, bucketEndpoint, 0);
+    }
+
+    public Toolkit(String bucketName, String bucketEndpoint, int version) {
         this.bucketName = bucketName;
         this.bucketDomainName = bucketEndpoint;
+        this.version = version;
     }
 
     public String getBucketName() {
@@ -21,11 +27,16 @@ public class Toolkit {
         return bucketDomainName;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         return "Toolkit{" +
                 "bucketName='" + bucketName + '\'' +
                 ", bucketDomainName='" + bucketDomainName + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
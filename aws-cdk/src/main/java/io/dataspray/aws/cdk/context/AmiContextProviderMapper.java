@@ -27,20 +27,19 @@ public class AmiContextProviderMapper implements ContextProviderMapper<AmiContex
     @Override
     public Object getContextValue(AmiContextQuery properties) {
         String environment = ContextProviders.buildEnvironment(properties.getAccount(), properties.getRegion());
-        try (Ec2Client ec2Client = awsClientProvider.getClient(Ec2Client.class, environment)) {
-            DescribeImagesRequest describeImagesRequest = DescribeImagesRequest.builder()
-                    .owners(getOwners(properties))
-                    .filters(getFilters(properties))
-                    .build();
+        Ec2Client ec2Client = awsClientProvider.getClient(Ec2Client.class, environment);
+        DescribeImagesRequest describeImagesRequest = DescribeImagesRequest.builder()
+                .owners(getOwners(properties))
+                .filters(getFilters(properties))
+                .build();
 
-            return Stream.of(ec2Client.describeImages(describeImagesRequest))
-                    .filter(DescribeImagesResponse::hasImages)
-                    .flatMap(response -> response.images().stream())
-                    .filter(image -> image.imageId() != null)
-                    .max(Comparator.comparing(image -> getCreationDate(image).orElse(null), Comparator.nullsFirst(Comparator.naturalOrder())))
-                    .map(Image::imageId)
-                    .orElseThrow(() -> new CdkException("Found 0 AMIs matching the criteria, however at lest 1 is required"));
-        }
+        return Stream.of(ec2Client.describeImages(describeImagesRequest))
+                .filter(DescribeImagesResponse::hasImages)
+                .flatMap(response -> response.images().stream())
+                .filter(image -> image.imageId() != null)
+                .max(Comparator.comparing(image -> getCreationDate(image).orElse(null), Comparator.nullsFirst(Comparator.naturalOrder())))
+                .map(Image::imageId)
+                .orElseThrow(() -> new CdkException("Found 0 AMIs matching the criteria, however at lest 1 is required"));
     }
 
     @Override
@@ -24,14 +24,13 @@ public class AvailabilityZonesContextProviderMapper implements ContextProviderMa
     @Override
     public Object getContextValue(AvailabilityZonesContextQuery properties) {
         String environment = ContextProviders.buildEnvironment(properties.getAccount(), properties.getRegion());
-        try (Ec2Client ec2Client = awsClientProvider.getClient(Ec2Client.class, environment)) {
-            return Stream.of(ec2Client.describeAvailabilityZones())
-                    .filter(DescribeAvailabilityZonesResponse::hasAvailabilityZones)
-                    .flatMap(availabilityZone -> availabilityZone.availabilityZones().stream())
-                    .filter(availabilityZone -> availabilityZone.state() == AvailabilityZoneState.AVAILABLE)
-                    .map(AvailabilityZone::zoneName)
-                    .toArray(String[]::new);
-        }
+        Ec2Client ec2Client = awsClientProvider.getClient(Ec2Client.class, environment);
+        return Stream.of(ec2Client.describeAvailabilityZones())
+                .filter(DescribeAvailabilityZonesResponse::hasAvailabilityZones)
+                .flatMap(availabilityZone -> availabilityZone.availabilityZones().stream())
+                .filter(availabilityZone -> availabilityZone.state() == AvailabilityZoneState.AVAILABLE)
+                .map(AvailabilityZone::zoneName)
+                .toArray(String[]::new);
     }
 
     @Override
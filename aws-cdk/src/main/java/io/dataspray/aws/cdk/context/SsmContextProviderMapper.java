@@ -24,25 +24,24 @@ public class SsmContextProviderMapper implements ContextProviderMapper<SSMParame
         String environment = ContextProviders.buildEnvironment(properties.getAccount(), properties.getRegion());
         String parameterName = properties.getParameterName();
 
-        try (SsmClient ssmClient = awsClientProvider.getClient(SsmClient.class, environment)) {
-            String value;
-            try {
-                GetParameterResponse response = ssmClient.getParameter(parameterRequest(parameterName));
-                value = Optional.of(response)
-                        .map(GetParameterResponse::parameter)
-                        .map(Parameter::value)
-                        .orElse(null);
-            } catch (ParameterNotFoundException e) {
-                value = null;
-            }
-
-            if (value == null) {
-                throw new CdkException("The SSM parameter '" + parameterName + "' is not available for the " +
-                        "following environment: " + environment);
-            }
-
-            return value;
+        SsmClient ssmClient = awsClientProvider.getClient(SsmClient.class, environment);
+        String value;
+        try {
+            GetParameterResponse response = ssmClient.getParameter(parameterRequest(parameterName));
+            value = Optional.of(response)
+                    .map(GetParameterResponse::parameter)
+                    .map(Parameter::value)
+                    .orElse(null);
+        } catch (ParameterNotFoundException e) {
+            value = null;
         }
+
+        if (value == null) {
+            throw new CdkException("The SSM parameter '" + parameterName + "' is not available for the " +
+                    "following environment: " + environment);
+        }
+
+        return value;
     }
 
     @Override
@@ -41,10 +41,9 @@ public class VpcNetworkContextProviderMapper implements ContextProviderMapper<Vp
     @Override
     public Object getContextValue(VpcContextQuery properties) {
         String environment = ContextProviders.buildEnvironment(properties.getAccount(), properties.getRegion());
-        try (Ec2Client ec2Client = awsClientProvider.getClient(Ec2Client.class, environment)) {
-            Vpc vpc = getVpc(ec2Client, getFilters(properties));
-            return getVpcContext(ec2Client, vpc, properties);
-        }
+        Ec2Client ec2Client = awsClientProvider.getClient(Ec2Client.class, environment);
+        Vpc vpc = getVpc(ec2Client, getFilters(properties));
+        return getVpcContext(ec2Client, vpc, properties);
     }
 
     @Override
@@ -16,11 +16,9 @@ public class DefaultProcessRunner implements ProcessRunner {
     private static final Logger logger = LoggerFactory.getLogger(DefaultProcessRunner.class);
 
     private final File defaultWorkingDirectory;
-    private final Executor executor;
 
     public DefaultProcessRunner(File defaultWorkingDirectory) {
         this.defaultWorkingDirectory = defaultWorkingDirectory;
-        this.executor = createExecutor();
     }
 
     private static Executor createExecutor() {
@@ -34,6 +32,9 @@ public class DefaultProcessRunner implements ProcessRunner {
     public int run(List<String> command, ProcessContext processContext) {
         CommandLine commandLine = toCommandLine(command);
 
+        // The executor holds the working directory and the stream handler, so each run gets its own one in order to
+        // allow running multiple processes concurrently
+        Executor executor = createExecutor();
         File workingDirectory = processContext.getWorkingDirectory().orElse(defaultWorkingDirectory);
         executor.setWorkingDirectory(workingDirectory);
         OutputStream output = processContext.getOutput().orElse(System.out);
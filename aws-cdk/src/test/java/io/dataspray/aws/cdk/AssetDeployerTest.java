@@ -0,0 +1,102 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awscdk.cloudassembly.schema.FileAsset;
+import software.amazon.awscdk.cloudassembly.schema.FileDestination;
+import software.amazon.awscdk.cloudassembly.schema.FileSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AssetDeployerTest {
+
+    private static final Path CLOUD_ASSEMBLY_DIRECTORY = Paths.get("cdk.out");
+
+    @Test
+    public void testFileAssetConcurrencyLimit() throws IOException {
+        FileAssetPublisher fileAssetPublisher = mock(FileAssetPublisher.class);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return null;
+        }).when(fileAssetPublisher).publish(any(Path.class), anyString(), anyString(), any());
+
+        Map<String, FileAsset> fileAssets = new HashMap<>();
+        for (int i = 0; i < 6; i++) {
+            fileAssets.put("asset" + i, fileAsset("asset" + i));
+        }
+
+        try (AssetDeployer assetDeployer = assetDeployer(fileAssetPublisher, 2)) {
+            assetDeployer.deploy(ImmutableMap.of(), fileAssets);
+        }
+
+        verify(fileAssetPublisher, times(6)).publish(any(Path.class), anyString(), anyString(), any());
+        Assert.assertEquals(maxRunning.get(), 2);
+    }
+
+    @Test
+    public void testFailuresCollectedPerAsset() throws IOException {
+        FileAssetPublisher fileAssetPublisher = mock(FileAssetPublisher.class);
+        doThrow(new IOException("first")).when(fileAssetPublisher)
+                .publish(eq(CLOUD_ASSEMBLY_DIRECTORY.resolve("first")), anyString(), anyString(), any());
+        doThrow(new IOException("second")).when(fileAssetPublisher)
+                .publish(eq(CLOUD_ASSEMBLY_DIRECTORY.resolve("second")), anyString(), anyString(), any());
+
+        Map<String, FileAsset> fileAssets = ImmutableMap.of(
+                "first", fileAsset("first"),
+                "second", fileAsset("second"),
+                "third", fileAsset("third"));
+
+        try (AssetDeployer assetDeployer = assetDeployer(fileAssetPublisher, 1)) {
+            assetDeployer.deploy(ImmutableMap.of(), fileAssets);
+            Assert.fail("The failures have not been propagated");
+        } catch (StackDeploymentException e) {
+            Assert.assertTrue(e.getMessage().contains("s3://bucket/first.zip"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains("s3://bucket/second.zip"), e.getMessage());
+            Assert.assertEquals(e.getSuppressed().length, 1);
+        }
+
+        // The failures don't prevent the remaining assets from being published
+        verify(fileAssetPublisher).publish(eq(CLOUD_ASSEMBLY_DIRECTORY.resolve("third")), anyString(), anyString(), any());
+    }
+
+    private AssetDeployer assetDeployer(FileAssetPublisher fileAssetPublisher, int fileConcurrency) {
+        EnvironmentResolver environmentResolver = mock(EnvironmentResolver.class);
+        ResolvedEnvironment environment = mock(ResolvedEnvironment.class);
+        when(environment.resolveVariables(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(environmentResolver.resolveFromDestination(anyString())).thenReturn(environment);
+        return new AssetDeployer(CLOUD_ASSEMBLY_DIRECTORY, fileAssetPublisher, mock(DockerImageAssetPublisher.class),
+                environmentResolver, mock(AwsClients.class), fileConcurrency, 1);
+    }
+
+    private FileAsset fileAsset(String name) {
+        return FileAsset.builder()
+                .source(FileSource.builder()
+                        .path(name)
+                        .build())
+                .destinations(ImmutableMap.of("destination", FileDestination.builder()
+                        .bucketName("bucket")
+                        .objectKey(name + ".zip")
+                        .build()))
+                .build();
+    }
+}
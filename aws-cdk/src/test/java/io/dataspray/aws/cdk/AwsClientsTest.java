@@ -0,0 +1,31 @@
+package io.dataspray.aws.cdk;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.regions.PartitionMetadata;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Optional;
+
+public class AwsClientsTest {
+
+    @Test
+    public void testClientsAreCachedPerEnvironment() {
+        ResolvedEnvironment usEast1 = environment(Region.US_EAST_1);
+        ResolvedEnvironment euWest1 = environment(Region.EU_WEST_1);
+
+        try (AwsClients awsClients = new AwsClients()) {
+            Assert.assertSame(awsClients.cloudFormation(usEast1), awsClients.cloudFormation(environment(Region.US_EAST_1)));
+            Assert.assertNotSame(awsClients.cloudFormation(usEast1), awsClients.cloudFormation(euWest1));
+            Assert.assertSame(awsClients.ecr(euWest1), awsClients.ecr(euWest1));
+            Assert.assertEquals(awsClients.ecr(euWest1).serviceClientConfiguration().region(), Region.EU_WEST_1);
+            Assert.assertEquals(awsClients.route53(euWest1).serviceClientConfiguration().region(), Region.AWS_GLOBAL);
+        }
+    }
+
+    private ResolvedEnvironment environment(Region region) {
+        return new ResolvedEnvironment(PartitionMetadata.of(region), region, "123456789012",
+                AwsBasicCredentials.create("accessKeyId", "secretAccessKey"), Optional.empty());
+    }
+}
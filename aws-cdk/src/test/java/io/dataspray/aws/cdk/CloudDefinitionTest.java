@@ -0,0 +1,130 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awscdk.cloudassembly.schema.ContainerImageAssetMetadataEntry;
+import software.amazon.awscdk.cloudassembly.schema.DockerImageAsset;
+import software.amazon.awscdk.cloudassembly.schema.FileAsset;
+import software.amazon.awscdk.cloudassembly.schema.FileAssetMetadataEntry;
+import software.amazon.awscdk.cloudassembly.schema.FileAssetPackaging;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+public class CloudDefinitionTest {
+
+    @Test
+    public void testStacks() throws URISyntaxException {
+        CloudDefinition cloudDefinition = CloudDefinition.create(cloudAssemblyDirectory());
+
+        Assert.assertEquals(cloudDefinition.getStacks().stream()
+                .map(StackDefinition::getStackName)
+                .collect(Collectors.toList()), ImmutableList.of("Modern", "Legacy"));
+
+        StackDefinition modern = cloudDefinition.getStacks().get(0);
+        Assert.assertEquals(modern.getEnvironment(), "aws://123456789012/eu-west-1");
+        Assert.assertEquals(modern.getRequiredToolkitStackVersion(), Integer.valueOf(6));
+        Assert.assertEquals(modern.getResources().keySet(), ImmutableSet.of("TopicBFC7AF6E"));
+        Assert.assertEquals(modern.getParameters().get("BootstrapVersion").getDefaultValue(), "/cdk-bootstrap/hnb659fds/version");
+        Assert.assertSame(modern.getParameters(), modern.getParameters());
+        Assert.assertEquals(modern.getParameterValues(), ImmutableMap.of());
+        Assert.assertEquals(modern.getDependencies(), ImmutableList.of("Modern.assets"));
+
+        StackDefinition legacy = cloudDefinition.getStacks().get(1);
+        Assert.assertEquals(legacy.getEnvironment(), "aws://123456789012/us-east-1");
+        Assert.assertNull(legacy.getRequiredToolkitStackVersion());
+        Assert.assertEquals(legacy.getParameterValues(), ImmutableMap.of("Param", "value"));
+        Assert.assertEquals(legacy.getParameters().size(), 4);
+        Assert.assertEquals(legacy.getDependencies(), ImmutableList.of("Modern"));
+    }
+
+    @Test
+    public void testAssetMetadata() throws URISyntaxException {
+        StackDefinition legacy = CloudDefinition.create(cloudAssemblyDirectory()).getStacks().get(1);
+
+        Assert.assertEquals(legacy.getFileAssets().size(), 1);
+        FileAssetMetadataEntry fileAsset = legacy.getFileAssets().get(0);
+        Assert.assertEquals(fileAsset.getId(), "549b144e");
+        Assert.assertEquals(fileAsset.getPackaging(), AssetDeployer.FILE_PACKAGING);
+        Assert.assertEquals(fileAsset.getPath(), "asset.549b144e.txt");
+        Assert.assertEquals(fileAsset.getS3BucketParameter(), "AssetParameters549b144eS3Bucket");
+        Assert.assertEquals(fileAsset.getS3KeyParameter(), "AssetParameters549b144eS3VersionKey");
+        Assert.assertEquals(fileAsset.getArtifactHashParameter(), "AssetParameters549b144eArtifactHash");
+
+        Assert.assertEquals(legacy.getImageAssets().size(), 1);
+        ContainerImageAssetMetadataEntry imageAsset = legacy.getImageAssets().get(0);
+        Assert.assertEquals(imageAsset.getId(), "b9234955");
+        Assert.assertEquals(imageAsset.getRepositoryName(), "aws-cdk/assets");
+        Assert.assertEquals(imageAsset.getImageTag(), "b9234955");
+        Assert.assertEquals(imageAsset.getBuildArgs(), ImmutableMap.of("a", "b"));
+        Assert.assertNull(imageAsset.getFile());
+    }
+
+    @Test
+    public void testAssetManifests() throws URISyntaxException {
+        CloudDefinition cloudDefinition = CloudDefinition.create(cloudAssemblyDirectory());
+
+        FileAsset fileAsset = cloudDefinition.getFileAssets().get("1f107da8");
+        Assert.assertEquals(fileAsset.getSource().getPath(), "asset.1f107da8");
+        Assert.assertEquals(fileAsset.getSource().getPackaging(), FileAssetPackaging.ZIP_DIRECTORY);
+        Assert.assertEquals(fileAsset.getDestinations().get("123456789012-eu-west-1").getBucketName(), "cdk-hnb659fds-assets-123456789012-eu-west-1");
+        Assert.assertEquals(fileAsset.getDestinations().get("123456789012-eu-west-1").getObjectKey(), "1f107da8.zip");
+
+        DockerImageAsset imageAsset = cloudDefinition.getImageAssets().get("9c346320");
+        Assert.assertEquals(imageAsset.getSource().getDirectory(), "asset.9c346320");
+        Assert.assertEquals(imageAsset.getSource().getDockerBuildArgs(), ImmutableMap.of("a", "b"));
+        Assert.assertEquals(imageAsset.getDestinations().get("123456789012-eu-west-1").getRepositoryName(), "cdk-hnb659fds-container-assets-123456789012-eu-west-1");
+        Assert.assertNull(imageAsset.getDestinations().get("123456789012-eu-west-1").getAssumeRoleArn());
+
+        // The assets are grouped by the manifests the stacks depend on
+        Assert.assertEquals(cloudDefinition.getAssetManifests().keySet(), ImmutableSet.of("Modern.assets"));
+        Assert.assertEquals(cloudDefinition.getAssetManifests().get("Modern.assets").getFiles().keySet(), cloudDefinition.getFileAssets().keySet());
+        Assert.assertEquals(cloudDefinition.getAssetManifests().get("Modern.assets").getDockerImages().keySet(), cloudDefinition.getImageAssets().keySet());
+    }
+
+    @Test
+    public void testAssetManifestsOfSelectedStacks() throws URISyntaxException {
+        CloudDefinition cloudDefinition = CloudDefinition.create(cloudAssemblyDirectory());
+        StackDefinition modern = cloudDefinition.getStacks().get(0);
+        StackDefinition legacy = cloudDefinition.getStacks().get(1);
+
+        Assert.assertEquals(cloudDefinition.getAssetManifests(ImmutableList.of(modern)).keySet(), ImmutableSet.of("Modern.assets"));
+        Assert.assertEquals(cloudDefinition.getAssetManifests(ImmutableList.of(legacy)), ImmutableMap.of());
+    }
+
+    @Test
+    public void testTemplateLoadedOnDemand() throws IOException {
+        Path cloudAssemblyDirectory = Files.createTempDirectory("cloud-assembly");
+        try {
+            Files.write(cloudAssemblyDirectory.resolve("manifest.json"), ("{\"artifacts\": {" +
+                    "\"Deployed\": {\"type\": \"aws:cloudformation:stack\", \"environment\": \"aws://123456789012/us-east-1\", " +
+                    "\"properties\": {\"templateFile\": \"Deployed.template.json\"}}, " +
+                    "\"Skipped\": {\"type\": \"aws:cloudformation:stack\", \"environment\": \"aws://123456789012/us-east-1\", " +
+                    "\"properties\": {\"templateFile\": \"Missing.template.json\"}}}}").getBytes(StandardCharsets.UTF_8));
+            Files.write(cloudAssemblyDirectory.resolve("Deployed.template.json"),
+                    "{\"Resources\": {\"Topic\": {\"Type\": \"AWS::SNS::Topic\"}}}".getBytes(StandardCharsets.UTF_8));
+
+            // The missing template doesn't prevent the stacks from being read until it's accessed
+            CloudDefinition cloudDefinition = CloudDefinition.create(cloudAssemblyDirectory);
+
+            Assert.assertEquals(cloudDefinition.getStacks().get(0).getResources().keySet(), ImmutableSet.of("Topic"));
+            Assert.assertThrows(CdkException.class, () -> cloudDefinition.getStacks().get(1).getTemplate());
+        } finally {
+            MoreFiles.deleteRecursively(cloudAssemblyDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    private Path cloudAssemblyDirectory() throws URISyntaxException {
+        return Paths.get(getClass().getResource("/cloud-assembly").toURI());
+    }
+}
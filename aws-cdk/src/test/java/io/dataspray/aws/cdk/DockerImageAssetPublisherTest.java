@@ -0,0 +1,97 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import io.dataspray.aws.cdk.process.ProcessRunner;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.regions.PartitionMetadata;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecr.EcrClient;
+import software.amazon.awssdk.services.ecr.model.AuthorizationData;
+import software.amazon.awssdk.services.ecr.model.DescribeImagesRequest;
+import software.amazon.awssdk.services.ecr.model.DescribeRepositoriesRequest;
+import software.amazon.awssdk.services.ecr.model.DescribeRepositoriesResponse;
+import software.amazon.awssdk.services.ecr.model.GetAuthorizationTokenResponse;
+import software.amazon.awssdk.services.ecr.model.ImageNotFoundException;
+import software.amazon.awssdk.services.ecr.model.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerImageAssetPublisherTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImageBuiltOnceForAllDestinations() {
+        ResolvedEnvironment usEast = environment(Region.US_EAST_1);
+        ResolvedEnvironment euWest = environment(Region.EU_WEST_1);
+        EcrClient usEastClient = ecrClient(Region.US_EAST_1);
+        EcrClient euWestClient = ecrClient(Region.EU_WEST_1);
+        AwsClients awsClients = mock(AwsClients.class);
+        when(awsClients.ecr(usEast)).thenReturn(usEastClient);
+        when(awsClients.ecr(euWest)).thenReturn(euWestClient);
+        ProcessRunner processRunner = mock(ProcessRunner.class);
+
+        ImageBuild imageBuild = ImageBuild.builder()
+                .withContextDirectory(Paths.get("asset.1234"))
+                .withDockerfile(Paths.get("asset.1234", "Dockerfile"))
+                .withImageTag("cdkasset-1234")
+                .build();
+        try (DockerImageAssetPublisher publisher = new DockerImageAssetPublisher(processRunner, awsClients)) {
+            publisher.publish(imageBuild, ImmutableList.of(
+                    new DockerImageAssetPublisher.Destination("repository", "1234", usEast),
+                    new DockerImageAssetPublisher.Destination("repository", "1234", euWest)));
+            // The image of the same asset published by another manifest isn't built again
+            publisher.publish("repository", "1234", imageBuild, usEast);
+        }
+
+        ArgumentCaptor<List<String>> commands = ArgumentCaptor.forClass(List.class);
+        verify(processRunner, atLeastOnce()).run(commands.capture());
+        List<String> executed = commands.getAllValues().stream()
+                .map(command -> String.join(" ", command.subList(0, 2)) + (command.get(1).equals("push") ? " " + command.get(2) : ""))
+                .collect(Collectors.toList());
+        Assert.assertEquals(executed.stream().filter(command -> command.equals("docker build")).count(), 1);
+        Assert.assertEquals(executed.stream().filter(command -> command.startsWith("docker push")).sorted().collect(Collectors.toList()), ImmutableList.of(
+                "docker push 123456789012.dkr.ecr.eu-west-1.amazonaws.com/repository:1234",
+                "docker push 123456789012.dkr.ecr.us-east-1.amazonaws.com/repository:1234",
+                "docker push 123456789012.dkr.ecr.us-east-1.amazonaws.com/repository:1234"));
+    }
+
+    private EcrClient ecrClient(Region region) {
+        String registry = "123456789012.dkr.ecr." + region.id() + ".amazonaws.com";
+        EcrClient client = mock(EcrClient.class);
+        when(client.describeImages(any(DescribeImagesRequest.class)))
+                .thenThrow(ImageNotFoundException.builder().message("Not found").build());
+        when(client.getAuthorizationToken()).thenReturn(GetAuthorizationTokenResponse.builder()
+                .authorizationData(AuthorizationData.builder()
+                        .authorizationToken(Base64.getEncoder().encodeToString("AWS:password".getBytes(StandardCharsets.UTF_8)))
+                        .proxyEndpoint("https://" + registry)
+                        .build())
+                .build());
+        when(client.describeRepositories(any(DescribeRepositoriesRequest.class)))
+                .thenReturn(DescribeRepositoriesResponse.builder()
+                        .repositories(Repository.builder()
+                                .repositoryName("repository")
+                                .repositoryUri(registry + "/repository")
+                                .build())
+                        .build());
+        return client;
+    }
+
+    private ResolvedEnvironment environment(Region region) {
+        return new ResolvedEnvironment(PartitionMetadata.of(region), region, "123456789012",
+                AwsBasicCredentials.create("accessKeyId", "secretAccessKey"), Optional.empty());
+    }
+}
@@ -0,0 +1,266 @@
+package io.dataspray.aws.cdk;
+
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.zeroturnaround.zip.ZipUtil;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedCopy;
+import software.amazon.awssdk.transfer.s3.model.CompletedUpload;
+import software.amazon.awssdk.transfer.s3.model.Copy;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileAssetPublisherTest {
+
+    @Test
+    public void testExistingObjectIsNotUploaded() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(HeadObjectResponse.builder().contentLength(42L).build()));
+
+        FileAssetPublisher publisher = publisher(s3Client, s3TransferManager);
+        publisher.publish(createTempFile(), "asset.zip", "bucket", environment("aws://1/us-east-1"));
+
+        verify(s3TransferManager, never()).upload(any(UploadRequest.class));
+        Assert.assertEquals(publisher.getSkippedObjects(), 1);
+        Assert.assertEquals(publisher.getSkippedBytes(), 42L);
+    }
+
+    @Test
+    public void testExistingContentIsNotUploaded() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(HeadObjectResponse.builder().contentLength(42L).build()));
+
+        FileAssetPublisher publisher = publisher(s3Client, s3TransferManager);
+        publisher.publish("{}".getBytes(StandardCharsets.UTF_8), "template.json", "bucket", environment("aws://1/us-east-1"));
+
+        verify(s3TransferManager, never()).upload(any(UploadRequest.class));
+        Assert.assertEquals(publisher.getSkippedObjects(), 1);
+    }
+
+    @Test
+    public void testMissingObjectIsUploaded() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(NoSuchKeyException.builder().statusCode(404).build()));
+
+        assertUploaded(s3Client);
+    }
+
+    @Test
+    public void testObjectIsUploadedIfAccessIsDenied() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(403).build()));
+
+        assertUploaded(s3Client);
+    }
+
+    @Test
+    public void testObjectIsUploadedIfCheckFails() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(SdkClientException.create("Connection reset")));
+
+        assertUploaded(s3Client);
+    }
+
+    @Test
+    public void testClientsPerEnvironment() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(HeadObjectResponse.builder().contentLength(1L).build()));
+        List<String> createdFor = new ArrayList<>();
+        FileAssetPublisher publisher = new FileAssetPublisher(DeployConfiguration.defaults(), environment -> {
+            createdFor.add(environment.getName());
+            return new FileAssetPublisher.TransferClients(s3Client, s3TransferManager);
+        });
+
+        Path file = createTempFile();
+        publisher.publish(file, "asset.zip", "bucket", environment("aws://1/us-east-1"));
+        publisher.publish(file, "asset.zip", "bucket", environment("aws://1/eu-west-1"));
+        publisher.publish(file, "asset.zip", "bucket", environment("aws://1/us-east-1"));
+        publisher.close();
+
+        Assert.assertEquals(createdFor, Arrays.asList("aws://1/us-east-1", "aws://1/eu-west-1"));
+        verify(s3TransferManager, times(2)).close();
+        verify(s3Client, times(2)).close();
+    }
+
+    @Test
+    public void testReplicatedAssetUploadedOnce() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(NoSuchKeyException.builder().statusCode(404).build()));
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        Upload upload = mock(Upload.class);
+        when(upload.completionFuture()).thenReturn(CompletableFuture.completedFuture(mock(CompletedUpload.class)));
+        when(s3TransferManager.upload(any(UploadRequest.class))).thenReturn(upload);
+        Copy copy = mock(Copy.class);
+        when(copy.completionFuture()).thenReturn(CompletableFuture.completedFuture(mock(CompletedCopy.class)));
+        when(s3TransferManager.copy(any(CopyRequest.class))).thenReturn(copy);
+
+        FileAssetPublisher publisher = publisher(s3Client, s3TransferManager);
+        publisher.publish(createTempFile(), Arrays.asList(
+                new FileAssetPublisher.Destination("bucket-us-east-1", "asset.zip", environment("aws://1/us-east-1")),
+                new FileAssetPublisher.Destination("bucket-eu-west-1", "asset.zip", environment("aws://1/eu-west-1")),
+                new FileAssetPublisher.Destination("bucket-ap-south-1", "asset.zip", environment("aws://1/ap-south-1"))));
+
+        // Each destination is only checked once, the upload doesn't check the existence of the object again
+        verify(s3Client, times(3)).headObject(any(HeadObjectRequest.class));
+        ArgumentCaptor<UploadRequest> uploadRequest = ArgumentCaptor.forClass(UploadRequest.class);
+        verify(s3TransferManager).upload(uploadRequest.capture());
+        Assert.assertEquals(uploadRequest.getValue().putObjectRequest().bucket(), "bucket-us-east-1");
+        ArgumentCaptor<CopyRequest> copyRequest = ArgumentCaptor.forClass(CopyRequest.class);
+        verify(s3TransferManager, times(2)).copy(copyRequest.capture());
+        Assert.assertEquals(copyRequest.getAllValues().stream()
+                .map(request -> request.copyObjectRequest().sourceBucket() + " -> " + request.copyObjectRequest().destinationBucket())
+                .collect(Collectors.toList()), Arrays.asList(
+                "bucket-us-east-1 -> bucket-eu-west-1",
+                "bucket-us-east-1 -> bucket-ap-south-1"));
+    }
+
+    @Test
+    public void testReplicatedAssetUploadedIfCopyFails() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(NoSuchKeyException.builder().statusCode(404).build()));
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        Upload upload = mock(Upload.class);
+        when(upload.completionFuture()).thenReturn(CompletableFuture.completedFuture(mock(CompletedUpload.class)));
+        when(s3TransferManager.upload(any(UploadRequest.class))).thenReturn(upload);
+        Copy copy = mock(Copy.class);
+        when(copy.completionFuture()).thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(403).build()));
+        when(s3TransferManager.copy(any(CopyRequest.class))).thenReturn(copy);
+
+        FileAssetPublisher publisher = publisher(s3Client, s3TransferManager);
+        publisher.publish(createTempFile(), Arrays.asList(
+                new FileAssetPublisher.Destination("bucket-us-east-1", "asset.zip", environment("aws://1/us-east-1")),
+                new FileAssetPublisher.Destination("bucket-eu-west-1", "asset.zip", environment("aws://2/eu-west-1"))));
+
+        verify(s3TransferManager, times(2)).upload(any(UploadRequest.class));
+    }
+
+    @Test(timeOut = 30_000)
+    public void testDirectoryIsStreamed() throws IOException {
+        S3AsyncClient s3Client = mock(S3AsyncClient.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(NoSuchKeyException.builder().statusCode(404).build()));
+        ByteArrayOutputStream uploadedContent = new ByteArrayOutputStream();
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        when(s3TransferManager.upload(any(UploadRequest.class))).thenAnswer(invocation -> {
+            UploadRequest request = invocation.getArgument(0);
+            Upload upload = mock(Upload.class);
+            when(upload.completionFuture()).thenReturn(consume(request, uploadedContent));
+            return upload;
+        });
+
+        Path directory = Files.createTempDirectory("asset");
+        Files.write(directory.resolve("index.js"), "exports.handler = () => {}".getBytes(StandardCharsets.UTF_8));
+        FileAssetPublisher publisher = publisher(DeployConfiguration.builder().streamDirectoryAssets(true).build(),
+                s3Client, s3TransferManager);
+        publisher.publish(directory, "asset.zip", "bucket", environment("aws://1/us-east-1"));
+
+        byte[] entry = ZipUtil.unpackEntry(new ByteArrayInputStream(uploadedContent.toByteArray()), "index.js");
+        Assert.assertEquals(new String(entry, StandardCharsets.UTF_8), "exports.handler = () => {}");
+    }
+
+    private CompletableFuture<CompletedUpload> consume(UploadRequest request, ByteArrayOutputStream content) {
+        CompletableFuture<CompletedUpload> future = new CompletableFuture<>();
+        request.requestBody().subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                content.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(mock(CompletedUpload.class));
+            }
+        });
+        return future;
+    }
+
+    private void assertUploaded(S3AsyncClient s3Client) throws IOException {
+        S3TransferManager s3TransferManager = mock(S3TransferManager.class);
+        Upload upload = mock(Upload.class);
+        when(upload.completionFuture()).thenReturn(CompletableFuture.completedFuture(mock(CompletedUpload.class)));
+        when(s3TransferManager.upload(any(UploadRequest.class))).thenReturn(upload);
+
+        FileAssetPublisher publisher = publisher(s3Client, s3TransferManager);
+        publisher.publish(createTempFile(), "asset.zip", "bucket", environment("aws://1/us-east-1"));
+
+        verify(s3TransferManager).upload(any(UploadRequest.class));
+        Assert.assertEquals(publisher.getSkippedObjects(), 0);
+    }
+
+    private FileAssetPublisher publisher(S3AsyncClient s3Client, S3TransferManager s3TransferManager) {
+        return publisher(DeployConfiguration.defaults(), s3Client, s3TransferManager);
+    }
+
+    private FileAssetPublisher publisher(DeployConfiguration configuration, S3AsyncClient s3Client, S3TransferManager s3TransferManager) {
+        return new FileAssetPublisher(configuration,
+                environment -> new FileAssetPublisher.TransferClients(s3Client, s3TransferManager));
+    }
+
+    private ResolvedEnvironment environment(String name) {
+        ResolvedEnvironment environment = mock(ResolvedEnvironment.class);
+        when(environment.getName()).thenReturn(name);
+        when(environment.getEndpointUriOpt()).thenReturn(Optional.empty());
+        when(environment.getClientKey()).thenReturn(name);
+        return environment;
+    }
+
+    private Path createTempFile() throws IOException {
+        Path file = Files.createTempFile("asset", ".zip");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
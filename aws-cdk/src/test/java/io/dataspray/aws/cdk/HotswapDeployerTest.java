@@ -0,0 +1,170 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.regions.PartitionMetadata;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackResourceRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackResourceResponse;
+import software.amazon.awssdk.services.cloudformation.model.GetTemplateRequest;
+import software.amazon.awssdk.services.cloudformation.model.GetTemplateResponse;
+import software.amazon.awssdk.services.cloudformation.model.Parameter;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackResourceDetail;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.UpdateFunctionCodeRequest;
+import software.amazon.awssdk.services.lambda.waiters.LambdaWaiter;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HotswapDeployerTest {
+
+    private static final ResolvedEnvironment ENVIRONMENT = new ResolvedEnvironment(PartitionMetadata.of(Region.US_EAST_1),
+            Region.US_EAST_1, "123456789012", AwsBasicCredentials.create("accessKeyId", "secretAccessKey"),
+            Optional.empty());
+
+    @Test
+    public void testCodeChangeHotswapped() {
+        CloudFormationClient client = client(template(ImmutableMap.of(
+                "S3Bucket", ImmutableMap.of("Fn::Sub", "cdk-hnb659fds-assets-${AWS::AccountId}-${AWS::Region}"),
+                "S3Key", "old.zip"), 3));
+        LambdaClient lambda = lambda();
+
+        Runnable hotswap = new HotswapDeployer(ENVIRONMENT, client, lambda).prepare(stackDefinition(template(ImmutableMap.of(
+                "S3Bucket", ImmutableMap.of("Fn::Sub", "cdk-hnb659fds-assets-${AWS::AccountId}-${AWS::Region}"),
+                "S3Key", "new.zip"), 3)), stack(), ImmutableMap.of(), ImmutableSet.of(), ImmutableMap.of());
+
+        Assert.assertNotNull(hotswap);
+        hotswap.run();
+        ArgumentCaptor<UpdateFunctionCodeRequest> request = ArgumentCaptor.forClass(UpdateFunctionCodeRequest.class);
+        verify(lambda).updateFunctionCode(request.capture());
+        Assert.assertEquals(request.getValue().functionName(), "function-physical-id");
+        Assert.assertEquals(request.getValue().s3Bucket(), "cdk-hnb659fds-assets-123456789012-us-east-1");
+        Assert.assertEquals(request.getValue().s3Key(), "new.zip");
+    }
+
+    @Test
+    public void testAssetParameterChangeHotswapped() {
+        Map<String, Object> versionKey = ImmutableMap.of("Fn::Split", ImmutableList.of("||", ImmutableMap.of("Ref", "AssetS3VersionKey")));
+        Map<String, Object> code = ImmutableMap.of(
+                "S3Bucket", ImmutableMap.of("Ref", "AssetS3Bucket"),
+                "S3Key", ImmutableMap.of("Fn::Join", ImmutableList.of("", ImmutableList.of(
+                        ImmutableMap.of("Fn::Select", ImmutableList.of(0, versionKey)),
+                        ImmutableMap.of("Fn::Select", ImmutableList.of(1, versionKey))))));
+        CloudFormationClient client = client(template(code, 3));
+        LambdaClient lambda = lambda();
+
+        Runnable hotswap = new HotswapDeployer(ENVIRONMENT, client, lambda).prepare(stackDefinition(template(code, 3)),
+                stack(parameter("AssetS3Bucket", "bucket"), parameter("AssetS3VersionKey", "assets/||old.zip")),
+                ImmutableMap.of("AssetS3Bucket", ParameterValue.value("bucket"), "AssetS3VersionKey", ParameterValue.value("assets/||new.zip")),
+                ImmutableSet.of("AssetS3Bucket", "AssetS3VersionKey"), ImmutableMap.of());
+
+        Assert.assertNotNull(hotswap);
+        hotswap.run();
+        ArgumentCaptor<UpdateFunctionCodeRequest> request = ArgumentCaptor.forClass(UpdateFunctionCodeRequest.class);
+        verify(lambda).updateFunctionCode(request.capture());
+        Assert.assertEquals(request.getValue().s3Bucket(), "bucket");
+        Assert.assertEquals(request.getValue().s3Key(), "assets/new.zip");
+    }
+
+    @Test
+    public void testConfigurationChangeNotHotswapped() {
+        CloudFormationClient client = client(template(ImmutableMap.of("S3Bucket", "bucket", "S3Key", "old.zip"), 3));
+        LambdaClient lambda = lambda();
+
+        Runnable hotswap = new HotswapDeployer(ENVIRONMENT, client, lambda).prepare(
+                stackDefinition(template(ImmutableMap.of("S3Bucket", "bucket", "S3Key", "new.zip"), 10)),
+                stack(), ImmutableMap.of(), ImmutableSet.of(), ImmutableMap.of());
+
+        Assert.assertNull(hotswap);
+        verify(lambda, never()).updateFunctionCode(any(UpdateFunctionCodeRequest.class));
+    }
+
+    @Test
+    public void testNonAssetParameterChangeNotHotswapped() {
+        Map<String, Object> template = template(ImmutableMap.of("S3Bucket", "bucket", "S3Key", "old.zip"), 3);
+        CloudFormationClient client = client(template);
+        LambdaClient lambda = lambda();
+
+        Runnable hotswap = new HotswapDeployer(ENVIRONMENT, client, lambda).prepare(stackDefinition(template),
+                stack(parameter("Stage", "dev")), ImmutableMap.of("Stage", ParameterValue.value("prod")), ImmutableSet.of(),
+                ImmutableMap.of());
+
+        Assert.assertNull(hotswap);
+        verify(lambda, never()).updateFunctionCode(any(UpdateFunctionCodeRequest.class));
+    }
+
+    private Map<String, Object> template(Map<String, Object> code, int timeout) {
+        return ImmutableMap.of("Resources", ImmutableMap.of("Function", ImmutableMap.of(
+                "Type", "AWS::Lambda::Function",
+                "Properties", ImmutableMap.of(
+                        "Code", code,
+                        "Handler", "index.handler",
+                        "Timeout", timeout),
+                "Metadata", ImmutableMap.of("aws:asset:path", String.valueOf(code.get("S3Key"))))));
+    }
+
+    private CloudFormationClient client(Map<String, Object> deployedTemplate) {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.getTemplate(any(GetTemplateRequest.class)))
+                .thenReturn(GetTemplateResponse.builder().templateBody(new Gson().toJson(deployedTemplate)).build());
+        when(client.describeStackResource(any(DescribeStackResourceRequest.class)))
+                .thenReturn(DescribeStackResourceResponse.builder()
+                        .stackResourceDetail(StackResourceDetail.builder()
+                                .logicalResourceId("Function")
+                                .physicalResourceId("function-physical-id")
+                                .build())
+                        .build());
+        return client;
+    }
+
+    private LambdaClient lambda() {
+        LambdaClient lambda = mock(LambdaClient.class);
+        when(lambda.waiter()).thenReturn(mock(LambdaWaiter.class));
+        return lambda;
+    }
+
+    private StackDefinition stackDefinition(Map<String, Object> template) {
+        return StackDefinition.builder()
+                .artifactId("stack")
+                .stackName("stack")
+                .template(template)
+                .fileAssets(ImmutableList.of())
+                .imageAssets(ImmutableList.of())
+                .environment("aws://123456789012/us-east-1")
+                .parameterValues(ImmutableMap.of())
+                .dependencies(ImmutableList.of())
+                .build();
+    }
+
+    private Stack stack(Parameter... parameters) {
+        return Stack.builder()
+                .stackId("stack")
+                .stackName("stack")
+                .stackStatus(StackStatus.UPDATE_COMPLETE)
+                .parameters(parameters)
+                .build();
+    }
+
+    private Parameter parameter(String key, String value) {
+        return Parameter.builder()
+                .parameterKey(key)
+                .parameterValue(value)
+                .build();
+    }
+}
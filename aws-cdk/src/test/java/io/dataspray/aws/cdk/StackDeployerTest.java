@@ -0,0 +1,392 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.regions.PartitionMetadata;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.ChangeSetStatus;
+import software.amazon.awssdk.services.cloudformation.model.ChangeSetType;
+import software.amazon.awssdk.services.cloudformation.model.CloudFormationException;
+import software.amazon.awssdk.services.cloudformation.model.CreateChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.CreateChangeSetResponse;
+import software.amazon.awssdk.services.cloudformation.model.CreateStackRequest;
+import software.amazon.awssdk.services.cloudformation.model.DeleteChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.DeleteStackRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeChangeSetResponse;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksResponse;
+import software.amazon.awssdk.services.cloudformation.model.ExecuteChangeSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.Output;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import software.amazon.awssdk.services.cloudformation.model.UpdateStackRequest;
+import software.amazon.awssdk.services.cloudformation.model.UpdateStackResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StackDeployerTest {
+
+    private static final Map<String, Object> TEMPLATE = ImmutableMap.of(
+            "Resources", ImmutableMap.of("Topic", ImmutableMap.of("Type", "AWS::SNS::Topic")));
+
+    private static final DeployConfiguration SKIP_UNCHANGED = DeployConfiguration.defaults().toBuilder()
+            .skipUnchangedStacks(true)
+            .build();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnchangedStackSkipped() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+        deployer(client, SKIP_UNCHANGED)
+                .deploy(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of("tag", "value"));
+
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client).updateStack(request.capture());
+        Map<String, Map<String, Object>> outputs = (Map<String, Map<String, Object>>) new Gson()
+                .fromJson(request.getValue().templateBody(), Map.class)
+                .get("Outputs");
+        String fingerprint = (String) outputs.get(StackDeployer.FINGERPRINT_OUTPUT).get("Value");
+
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack(Output.builder()
+                        .outputKey(StackDeployer.FINGERPRINT_OUTPUT)
+                        .outputValue(fingerprint)
+                        .build())).build());
+
+        deployer(client, SKIP_UNCHANGED)
+                .deploy(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of("tag", "value"));
+        verify(client, times(1)).updateStack(any(UpdateStackRequest.class));
+
+        // A different tag value changes the fingerprint
+        deployer(client, SKIP_UNCHANGED)
+                .deploy(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of("tag", "other"));
+        verify(client, times(2)).updateStack(any(UpdateStackRequest.class));
+    }
+
+    @Test
+    public void testStackWithSsmParametersNotSkipped() {
+        Map<String, Object> template = ImmutableMap.of(
+                "Parameters", ImmutableMap.of("ImageId", ImmutableMap.of(
+                        "Type", "AWS::SSM::Parameter::Value<AWS::EC2::Image::Id>",
+                        "Default", "/aws/service/ami-amazon-linux-latest/al2023-ami-kernel-default-x86_64")),
+                "Resources", TEMPLATE.get("Resources"));
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+
+        deployer(client, SKIP_UNCHANGED)
+                .deploy(stackDefinition().template(template).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        deployer(client, SKIP_UNCHANGED)
+                .deploy(stackDefinition().template(template).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+        // The resolved value of the SSM parameter may have changed, so the stack is always updated
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client, times(2)).updateStack(request.capture());
+        Assert.assertFalse(request.getValue().templateBody().contains(StackDeployer.FINGERPRINT_OUTPUT));
+    }
+
+    @Test
+    public void testFingerprintNotInjectedIfOutputLimitReached() {
+        Map<String, Object> outputs = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            outputs.put("Output" + i, ImmutableMap.of("Value", "value"));
+        }
+        Map<String, Object> template = ImmutableMap.of("Resources", TEMPLATE.get("Resources"), "Outputs", outputs);
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+
+        deployer(client, SKIP_UNCHANGED)
+                .deploy(stackDefinition().template(template).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client).updateStack(request.capture());
+        Assert.assertFalse(request.getValue().templateBody().contains(StackDeployer.FINGERPRINT_OUTPUT));
+    }
+
+    @Test
+    public void testFingerprintNotInjectedIfDisabled() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults().toBuilder()
+                .skipUnchangedStacks(false)
+                .build());
+
+        deployer.deploy(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client).updateStack(request.capture());
+        Assert.assertEquals(new Gson().fromJson(request.getValue().templateBody(), Map.class), TEMPLATE);
+        verify(client, never()).createStack(any(CreateStackRequest.class));
+    }
+
+    @Test
+    public void testTemplateFileSubmittedAsIs() throws IOException {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults());
+
+        String templateBody = "{\n  \"Resources\": {\n    \"Topic\": {\"Type\": \"AWS::SNS::Topic\"}\n  }\n}\n";
+        Path templateFile = Files.createTempFile("stack", ".template.json");
+        try {
+            Files.write(templateFile, templateBody.getBytes(StandardCharsets.UTF_8));
+            deployer.deploy(stackDefinition().template(templateFile).build(),
+                    ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        } finally {
+            Files.delete(templateFile);
+        }
+
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client).updateStack(request.capture());
+        Assert.assertEquals(request.getValue().templateBody(), templateBody);
+    }
+
+    @Test
+    public void testCompactTemplateSubmittedInlineIfTemplateFileTooLarge() throws IOException {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+        FileAssetPublisher fileAssetPublisher = mock(FileAssetPublisher.class);
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults(), fileAssetPublisher);
+
+        Map<String, Object> resources = new LinkedHashMap<>();
+        for (int i = 0; i < 600; i++) {
+            resources.put("Topic" + i, ImmutableMap.of(
+                    "Type", "AWS::SNS::Topic",
+                    "Properties", ImmutableMap.of("TopicName", "topic-" + i)));
+        }
+        Map<String, Object> template = ImmutableMap.of("Resources", resources);
+        String compactTemplate = new Gson().toJson(template);
+        byte[] prettyTemplate = new GsonBuilder().setPrettyPrinting().create().toJson(template).getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(compactTemplate.getBytes(StandardCharsets.UTF_8).length < 50 * 1024);
+        Assert.assertTrue(prettyTemplate.length > 50 * 1024);
+
+        Path templateFile = Files.createTempFile("stack", ".template.json");
+        try {
+            Files.write(templateFile, prettyTemplate);
+            deployer.deploy(stackDefinition().template(templateFile).build(),
+                    ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        } finally {
+            Files.delete(templateFile);
+        }
+
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client).updateStack(request.capture());
+        Assert.assertEquals(request.getValue().templateBody(), compactTemplate);
+        Assert.assertNull(request.getValue().templateURL());
+        verify(fileAssetPublisher, never()).publish(any(Path.class), any(), any(), any());
+    }
+
+    @Test
+    public void testTemplateFileSubmittedAsIsIfNotFingerprinted() throws IOException {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.updateStack(any(UpdateStackRequest.class)))
+                .thenReturn(UpdateStackResponse.builder().stackId("stack").build());
+        Executor hashExecutor = mock(Executor.class);
+        StackDeployer deployer = deployer(client, SKIP_UNCHANGED, mock(FileAssetPublisher.class), hashExecutor);
+
+        String templateBody = "{\n  \"Parameters\": {\n    \"Value\": {\"Type\": \"AWS::SSM::Parameter::Value<String>\", " +
+                "\"Default\": \"/value\"}\n  },\n  \"Resources\": {\n    \"Topic\": {\"Type\": \"AWS::SNS::Topic\"}\n  }\n}\n";
+        Path templateFile = Files.createTempFile("stack", ".template.json");
+        try {
+            Files.write(templateFile, templateBody.getBytes(StandardCharsets.UTF_8));
+            deployer.deploy(stackDefinition().template(templateFile).build(),
+                    ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        } finally {
+            Files.delete(templateFile);
+        }
+
+        ArgumentCaptor<UpdateStackRequest> request = ArgumentCaptor.forClass(UpdateStackRequest.class);
+        verify(client).updateStack(request.capture());
+        Assert.assertEquals(request.getValue().templateBody(), templateBody);
+        // The hash is neither needed for the fingerprint nor for the name of the uploaded template
+        verify(hashExecutor, never()).execute(any());
+    }
+
+    @Test
+    public void testChangeSetExecutedOnDeployment() {
+        CloudFormationClient client = changeSetClient(DescribeChangeSetResponse.builder()
+                .status(ChangeSetStatus.CREATE_COMPLETE)
+                .build());
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults().toBuilder()
+                .changeSets(true)
+                .build());
+
+        Supplier<Stack> deployment = deployer.prepare(stackDefinition().template(TEMPLATE).build(),
+                ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        ArgumentCaptor<CreateChangeSetRequest> request = ArgumentCaptor.forClass(CreateChangeSetRequest.class);
+        verify(client).createChangeSet(request.capture());
+        Assert.assertEquals(request.getValue().changeSetType(), ChangeSetType.UPDATE);
+        verify(client, never()).executeChangeSet(any(ExecuteChangeSetRequest.class));
+
+        deployment.get();
+        verify(client).executeChangeSet(any(ExecuteChangeSetRequest.class));
+        verify(client, never()).updateStack(any(UpdateStackRequest.class));
+    }
+
+    @Test
+    public void testEmptyChangeSetDiscarded() {
+        CloudFormationClient client = changeSetClient(DescribeChangeSetResponse.builder()
+                .status(ChangeSetStatus.FAILED)
+                .statusReason("The submitted information didn't contain changes. Submit different information to create a change set.")
+                .build());
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults().toBuilder()
+                .changeSets(true)
+                .build());
+
+        deployer.deploy(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+        verify(client).deleteChangeSet(any(DeleteChangeSetRequest.class));
+        verify(client, never()).executeChangeSet(any(ExecuteChangeSetRequest.class));
+    }
+
+    @Test
+    public void testUnexecutedChangeSetDiscarded() {
+        CloudFormationClient client = changeSetClient(DescribeChangeSetResponse.builder()
+                .status(ChangeSetStatus.CREATE_COMPLETE)
+                .build());
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults().toBuilder()
+                .changeSets(true)
+                .build());
+
+        deployer.prepare(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        deployer.discardChangeSets();
+        verify(client).deleteChangeSet(any(DeleteChangeSetRequest.class));
+        verify(client, never()).executeChangeSet(any(ExecuteChangeSetRequest.class));
+
+        // The executed change sets are left alone
+        deployer.prepare(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of()).get();
+        deployer.discardChangeSets();
+        verify(client, times(1)).deleteChangeSet(any(DeleteChangeSetRequest.class));
+    }
+
+    @Test
+    public void testStackOfUnexecutedChangeSetDeleted() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenThrow(CloudFormationException.builder().message("Stack does not exist").build())
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack(StackStatus.REVIEW_IN_PROGRESS)).build())
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack(StackStatus.REVIEW_IN_PROGRESS)).build())
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack(StackStatus.DELETE_COMPLETE)).build());
+        when(client.createChangeSet(any(CreateChangeSetRequest.class)))
+                .thenReturn(CreateChangeSetResponse.builder().id("change-set").stackId("stack").build());
+        when(client.describeChangeSet(any(DescribeChangeSetRequest.class))).thenReturn(DescribeChangeSetResponse.builder()
+                .status(ChangeSetStatus.CREATE_COMPLETE)
+                .stackId("stack")
+                .build());
+        StackDeployer deployer = deployer(client, DeployConfiguration.defaults().toBuilder()
+                .changeSets(true)
+                .build());
+
+        deployer.prepare(stackDefinition().template(TEMPLATE).build(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+        ArgumentCaptor<CreateChangeSetRequest> request = ArgumentCaptor.forClass(CreateChangeSetRequest.class);
+        verify(client).createChangeSet(request.capture());
+        Assert.assertEquals(request.getValue().changeSetType(), ChangeSetType.CREATE);
+
+        deployer.discardChangeSets();
+        verify(client).deleteStack(any(DeleteStackRequest.class));
+        verify(client, never()).deleteChangeSet(any(DeleteChangeSetRequest.class));
+    }
+
+    private CloudFormationClient changeSetClient(DescribeChangeSetResponse changeSet) {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack()).build());
+        when(client.createChangeSet(any(CreateChangeSetRequest.class)))
+                .thenReturn(CreateChangeSetResponse.builder().id("change-set").stackId("stack").build());
+        when(client.describeChangeSet(any(DescribeChangeSetRequest.class))).thenReturn(changeSet);
+        return client;
+    }
+
+    private StackDeployer deployer(CloudFormationClient client, DeployConfiguration configuration) {
+        return deployer(client, configuration, mock(FileAssetPublisher.class));
+    }
+
+    private StackDeployer deployer(CloudFormationClient client, DeployConfiguration configuration, FileAssetPublisher fileAssetPublisher) {
+        return deployer(client, configuration, fileAssetPublisher, Runnable::run);
+    }
+
+    private StackDeployer deployer(CloudFormationClient client, DeployConfiguration configuration,
+                                   FileAssetPublisher fileAssetPublisher, Executor hashExecutor) {
+        ResolvedEnvironment environment = new ResolvedEnvironment(PartitionMetadata.of(Region.US_EAST_1),
+                Region.US_EAST_1, "123456789012", AwsBasicCredentials.create("accessKeyId", "secretAccessKey"),
+                Optional.empty());
+        AwsClients awsClients = mock(AwsClients.class);
+        when(awsClients.cloudFormation(environment)).thenReturn(client);
+        when(awsClients.stacks(environment)).thenReturn(new StackSnapshot(client));
+        return new StackDeployer(Paths.get("cdk.out"), environment, new ToolkitConfiguration("CDKToolkit"),
+                fileAssetPublisher, mock(DockerImageAssetPublisher.class), awsClients, ImmutableSet.of(),
+                configuration, hashExecutor);
+    }
+
+    private StackDefinition.StackDefinitionBuilder stackDefinition() {
+        return StackDefinition.builder()
+                .artifactId("stack")
+                .stackName("stack")
+                .fileAssets(ImmutableList.of())
+                .imageAssets(ImmutableList.of())
+                .environment("aws://123456789012/us-east-1")
+                .parameterValues(ImmutableMap.of())
+                .dependencies(ImmutableList.of());
+    }
+
+    private Stack stack(Output... outputs) {
+        return Stack.builder()
+                .stackId("stack")
+                .stackName("stack")
+                .stackStatus(StackStatus.UPDATE_COMPLETE)
+                .outputs(outputs)
+                .build();
+    }
+
+    private Stack stack(StackStatus status) {
+        return Stack.builder()
+                .stackId("stack")
+                .stackName("stack")
+                .stackStatus(status)
+                .build();
+    }
+}
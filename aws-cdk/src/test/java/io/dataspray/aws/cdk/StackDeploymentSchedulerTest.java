@@ -0,0 +1,115 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StackDeploymentSchedulerTest {
+
+    @Test
+    public void testDependencyOrder() {
+        List<StackDefinition> stacks = ImmutableList.of(
+                stack("network", "aws://1/us-east-1"),
+                stack("database", "aws://1/us-east-1", "network"),
+                stack("service", "aws://1/us-east-1", "network", "database"));
+        List<String> deployed = new CopyOnWriteArrayList<>();
+
+        new StackDeploymentScheduler(10).execute(stacks, stack -> deployed.add(stack.getArtifactId()));
+
+        Assert.assertEquals(deployed, ImmutableList.of("network", "database", "service"));
+    }
+
+    @Test(timeOut = 10_000)
+    public void testIndependentStacksDeployedConcurrently() {
+        List<StackDefinition> stacks = ImmutableList.of(
+                stack("first", "aws://1/us-east-1"),
+                stack("second", "aws://1/us-east-1"));
+        CountDownLatch latch = new CountDownLatch(2);
+
+        new StackDeploymentScheduler(2).execute(stacks, stack -> {
+            latch.countDown();
+            try {
+                // Completes only if both of the stacks are deployed at the same time
+                Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrencyLimitPerEnvironment() {
+        List<StackDefinition> stacks = ImmutableList.of(
+                stack("first", "aws://1/us-east-1"),
+                stack("second", "aws://1/us-east-1"),
+                stack("third", "aws://1/us-east-1"),
+                stack("fourth", "aws://1/eu-west-1"),
+                stack("fifth", "aws://1/eu-west-1"));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        new StackDeploymentScheduler(1).execute(stacks, stack -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+        });
+
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testDependentsSkippedAfterFailure() {
+        List<StackDefinition> stacks = ImmutableList.of(
+                stack("network", "aws://1/us-east-1"),
+                stack("service", "aws://1/us-east-1", "network"));
+        List<String> deployed = new CopyOnWriteArrayList<>();
+
+        try {
+            new StackDeploymentScheduler(1).execute(stacks, stack -> {
+                if (stack.getArtifactId().equals("network")) {
+                    throw new CdkException("failure");
+                }
+                deployed.add(stack.getArtifactId());
+            });
+            Assert.fail("The failure has not been propagated");
+        } catch (CdkException e) {
+            Assert.assertEquals(e.getMessage(), "failure");
+        }
+
+        Assert.assertTrue(deployed.isEmpty());
+    }
+
+    @Test
+    public void testDependenciesOutsideOfSelectionAreSatisfied() {
+        List<StackDefinition> stacks = ImmutableList.of(stack("service", "aws://1/us-east-1", "network", "service.assets"));
+        List<String> deployed = new CopyOnWriteArrayList<>();
+
+        new StackDeploymentScheduler(1).execute(stacks, stack -> deployed.add(stack.getArtifactId()));
+
+        Assert.assertEquals(deployed, ImmutableList.of("service"));
+    }
+
+    private StackDefinition stack(String artifactId, String environment, String... dependencies) {
+        return StackDefinition.builder()
+                .artifactId(artifactId)
+                .stackName(artifactId)
+                .template(ImmutableMap.of())
+                .fileAssets(ImmutableList.of())
+                .imageAssets(ImmutableList.of())
+                .environment(environment)
+                .parameterValues(ImmutableMap.of())
+                .dependencies(ImmutableList.copyOf(dependencies))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package io.dataspray.aws.cdk;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackEventsRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackEventsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StackEventCursorTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    public void testEventsConsumedOnceInOrder() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStackEvents(any(DescribeStackEventsRequest.class)))
+                .thenReturn(response(null, event("2", 1), event("1", 0), event("0", -1)))
+                .thenReturn(response(null, event("4", 2), event("3", 1), event("2", 1), event("1", 0)));
+        List<String> consumed = new ArrayList<>();
+        StackEventCursor cursor = new StackEventCursor(client, "stack", START, event -> consumed.add(event.eventId()));
+
+        cursor.poll();
+        cursor.poll();
+
+        Assert.assertEquals(consumed, ImmutableList.of("1", "2", "3", "4"));
+    }
+
+    @Test
+    public void testOnlyNewPagesFetched() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStackEvents(any(DescribeStackEventsRequest.class))).thenAnswer(invocation -> {
+            DescribeStackEventsRequest request = invocation.getArgument(0);
+            if (request.nextToken() == null) {
+                return response("page2", event("3", 3), event("2", 2));
+            }
+            return response(null, event("1", 1), event("0", 0));
+        });
+        List<String> consumed = new ArrayList<>();
+        StackEventCursor cursor = new StackEventCursor(client, "stack", START, event -> consumed.add(event.eventId()));
+
+        cursor.poll();
+        cursor.poll();
+
+        Assert.assertEquals(consumed, ImmutableList.of("0", "1", "2", "3"));
+        // The second poll stops at the first page as it contains already consumed events
+        verify(client, times(3)).describeStackEvents(any(DescribeStackEventsRequest.class));
+    }
+
+    @Test
+    public void testNoEventsConsumedAfterClose() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStackEvents(any(DescribeStackEventsRequest.class)))
+                .thenReturn(response(null, event("0", 0)))
+                .thenReturn(response(null, event("1", 1), event("0", 0)));
+        List<String> consumed = new ArrayList<>();
+        StackEventCursor cursor = new StackEventCursor(client, "stack", START, event -> consumed.add(event.eventId()));
+
+        cursor.close();
+        cursor.poll();
+
+        Assert.assertEquals(consumed, ImmutableList.of("0"));
+    }
+
+    private DescribeStackEventsResponse response(String nextToken, StackEvent... events) {
+        return DescribeStackEventsResponse.builder()
+                .stackEvents(events)
+                .nextToken(nextToken)
+                .build();
+    }
+
+    private StackEvent event(String id, int secondsAfterStart) {
+        return StackEvent.builder()
+                .eventId(id)
+                .timestamp(START.plusSeconds(secondsAfterStart))
+                .build();
+    }
+}
@@ -0,0 +1,96 @@
+package io.dataspray.aws.cdk;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.regions.PartitionMetadata;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksResponse;
+import software.amazon.awssdk.services.cloudformation.model.Output;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StackSnapshotTest {
+
+    private static final ResolvedEnvironment ENVIRONMENT = new ResolvedEnvironment(PartitionMetadata.of(Region.US_EAST_1),
+            Region.US_EAST_1, "123456789012", AwsBasicCredentials.create("accessKeyId", "secretAccessKey"),
+            Optional.empty());
+
+    @Test
+    public void testStacksListedOnce() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack("first"), stack("second")).build());
+        StackSnapshot snapshot = new StackSnapshot(client);
+
+        snapshot.refresh();
+
+        Assert.assertTrue(snapshot.findStack("first").isPresent());
+        Assert.assertTrue(snapshot.findStack("second").isPresent());
+        Assert.assertFalse(snapshot.findStack("third").isPresent());
+        snapshot.update(stack("first").toBuilder().stackStatus(StackStatus.DELETE_COMPLETE).build());
+        Assert.assertFalse(snapshot.findStack("first").isPresent());
+        verify(client, times(1)).describeStacks(any(DescribeStacksRequest.class));
+    }
+
+    @Test
+    public void testToolkitResolvedOnce() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class)))
+                .thenReturn(DescribeStacksResponse.builder().stacks(stack("CDKToolkit",
+                        output("BucketName", "bucket"),
+                        output("BucketDomainName", "bucket.s3.amazonaws.com"),
+                        output("BootstrapVersion", "6"))).build());
+        StackSnapshot snapshot = new StackSnapshot(client);
+        ToolkitConfiguration toolkitConfiguration = new ToolkitConfiguration("CDKToolkit");
+
+        Toolkit toolkit = snapshot.getToolkit(stackDefinition(null), ENVIRONMENT, toolkitConfiguration);
+        Assert.assertSame(snapshot.getToolkit(stackDefinition(6), ENVIRONMENT, toolkitConfiguration), toolkit);
+        Assert.assertEquals(toolkit.getBucketName(), "bucket");
+        Assert.assertEquals(toolkit.getVersion(), 6);
+        Assert.assertThrows(StackDeploymentException.class,
+                () -> snapshot.getToolkit(stackDefinition(7), ENVIRONMENT, toolkitConfiguration));
+        verify(client, times(1)).describeStacks(any(DescribeStacksRequest.class));
+    }
+
+    private StackDefinition stackDefinition(Integer requiredToolkitStackVersion) {
+        return StackDefinition.builder()
+                .artifactId("stack")
+                .stackName("stack")
+                .template(Collections.emptyMap())
+                .fileAssets(Collections.emptyList())
+                .imageAssets(Collections.emptyList())
+                .environment("aws://123456789012/us-east-1")
+                .requiredToolkitStackVersion(requiredToolkitStackVersion)
+                .parameterValues(Collections.emptyMap())
+                .dependencies(Collections.emptyList())
+                .build();
+    }
+
+    private Stack stack(String name, Output... outputs) {
+        return Stack.builder()
+                .stackId(name)
+                .stackName(name)
+                .stackStatus(StackStatus.CREATE_COMPLETE)
+                .outputs(outputs)
+                .build();
+    }
+
+    private Output output(String key, String value) {
+        return Output.builder()
+                .outputKey(key)
+                .outputValue(value)
+                .build();
+    }
+}
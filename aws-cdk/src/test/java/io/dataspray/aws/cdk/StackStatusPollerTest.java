@@ -0,0 +1,125 @@
+package io.dataspray.aws.cdk;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStacksResponse;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StackStatusPollerTest {
+
+    @Test(timeOut = 10_000)
+    public void testCompletedOnceStable() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        AtomicInteger requests = new AtomicInteger();
+        when(client.describeStacks(any(DescribeStacksRequest.class))).thenAnswer(invocation -> {
+            StackStatus status = requests.incrementAndGet() < 3 ? StackStatus.CREATE_IN_PROGRESS : StackStatus.CREATE_COMPLETE;
+            return DescribeStacksResponse.builder().stacks(stack("first", status)).build();
+        });
+        List<StackStatus> polled = new CopyOnWriteArrayList<>();
+
+        Stack stack = poller().await(client, stack("first", StackStatus.CREATE_IN_PROGRESS), s -> polled.add(s.stackStatus())).join();
+
+        Assert.assertEquals(stack.stackStatus(), StackStatus.CREATE_COMPLETE);
+        Assert.assertEquals(requests.get(), 3);
+        Assert.assertEquals(polled.get(polled.size() - 1), StackStatus.CREATE_COMPLETE);
+    }
+
+    @Test
+    public void testCompletedStackIsNotPolled() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+
+        Stack stack = poller().await(client, stack("first", StackStatus.UPDATE_COMPLETE), null).join();
+
+        Assert.assertEquals(stack.stackStatus(), StackStatus.UPDATE_COMPLETE);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testStacksPolledInBatch() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        Map<String, StackStatus> statuses = new ConcurrentHashMap<>();
+        Stream.of("first", "second", "third").forEach(name -> statuses.put(name, StackStatus.UPDATE_IN_PROGRESS));
+        AtomicInteger listings = new AtomicInteger();
+        AtomicInteger describes = new AtomicInteger();
+        when(client.describeStacks(any(DescribeStacksRequest.class))).thenAnswer(invocation -> {
+            DescribeStacksRequest request = invocation.getArgument(0);
+            if (request.stackName() != null) {
+                describes.incrementAndGet();
+                return DescribeStacksResponse.builder().stacks(stack(request.stackName(), statuses.get(request.stackName()))).build();
+            }
+            // All the stacks are completed by the time of the second listing
+            if (listings.incrementAndGet() > 1) {
+                statuses.replaceAll((name, status) -> StackStatus.UPDATE_COMPLETE);
+            }
+            return DescribeStacksResponse.builder()
+                    .stacks(statuses.entrySet().stream()
+                            .map(entry -> stack(entry.getKey(), entry.getValue()))
+                            .collect(Collectors.toList()))
+                    .build();
+        });
+
+        // Long enough for all the stacks to be registered before the first poll
+        StackStatusPoller poller = new StackStatusPoller(Duration.ofMillis(200), Duration.ofMillis(200));
+        List<CompletableFuture<Stack>> futures = Stream.of("first", "second", "third")
+                .map(name -> poller.await(client, stack(name, StackStatus.UPDATE_IN_PROGRESS), null))
+                .collect(Collectors.toList());
+        futures.forEach(CompletableFuture::join);
+
+        futures.forEach(future -> Assert.assertEquals(future.join().stackStatus(), StackStatus.UPDATE_COMPLETE));
+        Assert.assertEquals(listings.get(), 2);
+        Assert.assertEquals(describes.get(), 0);
+    }
+
+    @Test
+    public void testFailurePropagated() {
+        CloudFormationClient client = mock(CloudFormationClient.class);
+        when(client.describeStacks(any(DescribeStacksRequest.class))).thenThrow(new IllegalStateException("failure"));
+
+        try {
+            poller().await(client, stack("first", StackStatus.CREATE_IN_PROGRESS), null).join();
+            Assert.fail("The failure has not been propagated");
+        } catch (RuntimeException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "failure");
+        }
+    }
+
+    @Test
+    public void testBackoff() {
+        StackStatusPoller poller = new StackStatusPoller(Duration.ofSeconds(1), Duration.ofSeconds(10));
+
+        Assert.assertEquals(poller.backoff(Duration.ofSeconds(1)), Duration.ofMillis(1500));
+        Assert.assertEquals(poller.backoff(Duration.ofSeconds(9)), Duration.ofSeconds(10));
+        for (int i = 0; i < 100; i++) {
+            Duration delay = poller.jitter(Duration.ofSeconds(10));
+            Assert.assertTrue(delay.compareTo(Duration.ofSeconds(8)) >= 0 && delay.compareTo(Duration.ofSeconds(12)) <= 0);
+        }
+    }
+
+    private StackStatusPoller poller() {
+        return new StackStatusPoller(Duration.ofMillis(10), Duration.ofMillis(50));
+    }
+
+    private Stack stack(String name, StackStatus status) {
+        return Stack.builder()
+                .stackId(name)
+                .stackName(name)
+                .stackStatus(status)
+                .build();
+    }
+}